@@ -0,0 +1,45 @@
+package com.example.dragdropgrid.lib;
+
+/**
+ * ベンチマーク/テスト用の GridLayoutModel を作る
+ */
+final class GridModels {
+
+    static final int WIDTH = 1080;
+    static final int COLUMN_COUNT = 4;
+    static final int ROW_HEIGHT = 300;
+    static final int HEADER_HEIGHT = 120;
+
+    /**
+     * 2x1 と 1x2 のセルが混ざる配置
+     */
+    static final SpanPacker.SpanLookup MIXED_SPANS = new SpanPacker.SpanLookup() {
+        @Override
+        public int getColumnSpan(int position) {
+            return position % 9 == 0 ? 2 : 1;
+        }
+
+        @Override
+        public int getRowSpan(int position) {
+            return position % 13 == 6 ? 2 : 1;
+        }
+    };
+
+    private GridModels() {
+    }
+
+    /**
+     * DragDropGrid#onMeasure と同じ順に measure したモデル
+     *
+     * @param spanned 複数マスのセルを混ぜる
+     */
+    static GridLayoutModel<Object> create(int itemCount, boolean spanned) {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        model.setSpanLookup(spanned ? MIXED_SPANS : null);
+        model.reset(itemCount);
+        int rowCount = model.resolveRowCount(GridLayoutModel.AUTOMATIC, COLUMN_COUNT);
+        model.measure(WIDTH, ROW_HEIGHT * rowCount, COLUMN_COUNT, rowCount, HEADER_HEIGHT);
+        return model;
+    }
+
+}
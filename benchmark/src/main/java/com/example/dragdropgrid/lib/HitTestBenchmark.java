@@ -0,0 +1,61 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 座標からの index 算出 (ACTION_DRAG_LOCATION 毎に呼ばれる)
+ *
+ * 座標は Header/Footer 側やグリッドの外も含めて事前に作っておく
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+
+    @Param({"100", "10000", "100000"})
+    public int itemCount;
+
+    @Param({"false", "true"})
+    public boolean spanned;
+
+    private GridLayoutModel<Object> mModel;
+    private final int[] mXs = new int[POINT_COUNT];
+    private final int[] mYs = new int[POINT_COUNT];
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mModel = GridModels.create(itemCount, spanned);
+        int height = GridModels.HEADER_HEIGHT + mModel.getItemRowCount() * mModel.getRowHeight();
+        Random random = new Random(1);
+        for (int i = 0; i < POINT_COUNT; i++) {
+            mXs[i] = random.nextInt(GridModels.WIDTH + 40) - 20;
+            mYs[i] = random.nextInt(height + 400) - 200;
+        }
+    }
+
+    @Benchmark
+    public int indexAt() {
+        int i = mNext++ & (POINT_COUNT - 1);
+        return mModel.indexAt(mXs[i], mYs[i]);
+    }
+
+}
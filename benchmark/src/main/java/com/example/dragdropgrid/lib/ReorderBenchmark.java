@@ -0,0 +1,69 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ドラッグ中の並び替え (GridLayoutModel#move)
+ *
+ * 並び順は毎回変わるが、常に有効な並べ替えのまま測る
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReorderBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int itemCount;
+
+    @Param({"false", "true"})
+    public boolean spanned;
+
+    private GridLayoutModel<Object> mModel;
+    private int mNext;
+    private boolean mForward;
+
+    @Setup
+    public void setUp() {
+        mModel = GridModels.create(itemCount, spanned);
+    }
+
+    /**
+     * 隣のセルとの入れ替え (ドラッグ中の1回の並び替え)
+     */
+    @Benchmark
+    public int moveAdjacent() {
+        int from = mNext;
+        mNext = from + 2 < itemCount ? from + 1 : 0;
+        mModel.move(from, from + 1);
+        return mModel.positionAt(from);
+    }
+
+    /**
+     * 先頭と末尾の間の移動 (全てのセルがずれる)
+     */
+    @Benchmark
+    public int moveAcross() {
+        mForward = !mForward;
+        if (mForward)
+            mModel.move(0, itemCount - 1);
+        else
+            mModel.move(itemCount - 1, 0);
+        return mModel.positionAt(0);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * index からのセル位置の算出と、表示範囲の index の算出
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int itemCount;
+
+    @Param({"false", "true"})
+    public boolean spanned;
+
+    private GridLayoutModel<Object> mModel;
+    private int mNextIndex;
+    private int mNextRow;
+
+    @Setup
+    public void setUp() {
+        mModel = GridModels.create(itemCount, spanned);
+    }
+
+    /**
+     * 1つのセルの位置と大きさ
+     */
+    @Benchmark
+    public void slot(Blackhole bh) {
+        int index = mNextIndex;
+        mNextIndex = index + 1 < itemCount ? index + 1 : 0;
+        bh.consume(mModel.slotLeft(index));
+        bh.consume(mModel.slotTop(index));
+        bh.consume(mModel.slotWidth(index));
+        bh.consume(mModel.slotHeight(index));
+    }
+
+    /**
+     * 表示範囲 (画面1枚分の行) の index
+     */
+    @Benchmark
+    public void visibleWindow(Blackhole bh) {
+        int rows = mModel.getItemRowCount();
+        int firstRow = mNextRow;
+        mNextRow = firstRow + 1 < rows ? firstRow + 1 : 0;
+        bh.consume(mModel.firstIndexFromRow(firstRow));
+        bh.consume(mModel.lastIndexToRow(firstRow + 8));
+    }
+
+}
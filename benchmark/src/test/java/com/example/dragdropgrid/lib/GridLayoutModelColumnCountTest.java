@@ -0,0 +1,56 @@
+package com.example.dragdropgrid.lib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * GridLayoutModel#resolveColumnCount (Adapter の列数が AUTOMATIC の場合)
+ */
+public class GridLayoutModelColumnCountTest {
+
+    private static final int WIDTH = 1080;
+    private static final int CHILD_WIDTH = 250;
+
+    @Test
+    public void usesAdapterColumnCount() {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        model.setMinColumnWidth(100);
+        assertEquals(3, model.resolveColumnCount(WIDTH, 3, CHILD_WIDTH));
+    }
+
+    /**
+     * setMinCellWidth を呼んでいない場合は、1列にならずセルの幅から決める
+     */
+    @Test
+    public void automaticWithoutMinWidthUsesChildWidth() {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        assertEquals(WIDTH / CHILD_WIDTH,
+                model.resolveColumnCount(WIDTH, GridLayoutModel.AUTOMATIC, CHILD_WIDTH));
+    }
+
+    @Test
+    public void automaticPrefersMinWidth() {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        model.setMinColumnWidth(100);
+        assertEquals(10, model.resolveColumnCount(WIDTH, GridLayoutModel.AUTOMATIC, CHILD_WIDTH));
+    }
+
+    @Test
+    public void automaticNarrowerThanChildIsOneColumn() {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        assertEquals(1, model.resolveColumnCount(CHILD_WIDTH - 1, GridLayoutModel.AUTOMATIC, CHILD_WIDTH));
+    }
+
+    /**
+     * 幅が分からない場合は前回の列数のまま
+     */
+    @Test
+    public void automaticWithoutAnyWidthKeepsColumnCount() {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        model.reset(10);
+        model.measure(WIDTH, 300, 4, 3, 0);
+        assertEquals(4, model.resolveColumnCount(WIDTH, GridLayoutModel.AUTOMATIC, 0));
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.example.dragdropgrid.lib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * GridLayoutModel#indexAt が、以前の DragDropGrid#indexWithPoint (セル毎に Rect を作って
+ * contains を調べるループ) と同じ結果を返すことを確認する
+ */
+public class GridLayoutModelHitTestTest {
+
+    private static final int WIDTH = 97;
+    private static final int ROW_HEIGHT = 13;
+    private static final int HEADER_HEIGHT = 7;
+    private static final int MAX_COLUMN_COUNT = 8;
+
+    /**
+     * 以前の実装 (android.graphics.Rect#contains と同じ判定)
+     */
+    private static int loopIndexWithPoint(int x, int y, int itemCount, int columnCount,
+            int columnWidth, int rowHeight, int marginTop) {
+        for (int i = 0; i < itemCount; i++) {
+            int col = i % columnCount;
+            int row = i / columnCount;
+            int left = col * columnWidth;
+            int right = left + columnWidth;
+            int top = row * rowHeight + marginTop;
+            int bottom = top + rowHeight;
+            if (left < right && top < bottom && x >= left && x < right && y >= top && y < bottom)
+                return i;
+        }
+        return -1;
+    }
+
+    private static GridLayoutModel<Object> model(int itemCount, int columnCount, int rowCount) {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        model.reset(itemCount);
+        model.measure(WIDTH, ROW_HEIGHT * rowCount, columnCount, rowCount, HEADER_HEIGHT);
+        return model;
+    }
+
+    /**
+     * Header, セル, 最終行の空き, Footer, グリッドの外 (負の座標を含む) の全ての座標
+     */
+    @Test
+    public void matchesLoopForEveryPoint() {
+        for (int columns = 1; columns <= MAX_COLUMN_COUNT; columns++) {
+            for (int itemCount = 0; itemCount <= columns * 3 + 1; itemCount++) {
+                int rows = Math.max(1, (itemCount + columns - 1) / columns);
+                // Adapter が実際より多い行数を返す場合も含める
+                for (int rowCount = rows; rowCount <= rows + 1; rowCount++)
+                    assertAllPoints(itemCount, columns, rowCount);
+            }
+        }
+    }
+
+    private void assertAllPoints(int itemCount, int columns, int rowCount) {
+        GridLayoutModel<Object> model = model(itemCount, columns, rowCount);
+        int columnWidth = WIDTH / columns;
+        int bottom = HEADER_HEIGHT + ROW_HEIGHT * (rowCount + 2);
+        for (int y = -ROW_HEIGHT; y < bottom; y++) {
+            for (int x = -columnWidth; x < WIDTH + columnWidth; x++) {
+                int expected = loopIndexWithPoint(x, y, itemCount, columns, columnWidth, ROW_HEIGHT, HEADER_HEIGHT);
+                assertEquals("columns=" + columns + " items=" + itemCount + " rows=" + rowCount
+                    + " (" + x + ", " + y + ")", expected, model.indexAt(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void headerBandIsNotACell() {
+        GridLayoutModel<Object> model = model(10, 4, 3);
+        for (int y = 0; y < HEADER_HEIGHT; y++)
+            assertEquals(-1, model.indexAt(0, y));
+        assertEquals(0, model.indexAt(0, HEADER_HEIGHT));
+    }
+
+    @Test
+    public void emptyTailOfLastRowIsNotACell() {
+        GridLayoutModel<Object> model = model(10, 4, 3);
+        int columnWidth = WIDTH / 4;
+        int lastRowY = HEADER_HEIGHT + ROW_HEIGHT * 2;
+        assertEquals(9, model.indexAt(columnWidth, lastRowY));
+        assertEquals(-1, model.indexAt(columnWidth * 2, lastRowY));
+        assertEquals(-1, model.indexAt(columnWidth * 3, lastRowY));
+    }
+
+    @Test
+    public void footerBandIsNotACell() {
+        GridLayoutModel<Object> model = model(12, 4, 3);
+        int footerY = HEADER_HEIGHT + ROW_HEIGHT * 3;
+        assertEquals(11, model.indexAt(WIDTH / 4 * 3, footerY - 1));
+        assertEquals(-1, model.indexAt(0, footerY));
+    }
+
+    @Test
+    public void extremeCoordinatesAreOutOfRange() {
+        GridLayoutModel<Object> model = model(100000, 4, 25000);
+        assertEquals(-1, model.indexAt(Integer.MIN_VALUE, HEADER_HEIGHT));
+        assertEquals(-1, model.indexAt(0, Integer.MIN_VALUE));
+        assertEquals(-1, model.indexAt(Integer.MAX_VALUE, HEADER_HEIGHT));
+        assertEquals(-1, model.indexAt(0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void unmeasuredModelHasNoCells() {
+        GridLayoutModel<Object> model = new GridLayoutModel<Object>();
+        model.reset(10);
+        assertEquals(-1, model.indexAt(0, 0));
+    }
+
+}
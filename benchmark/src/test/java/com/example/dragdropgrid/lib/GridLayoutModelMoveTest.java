@@ -0,0 +1,79 @@
+package com.example.dragdropgrid.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * GridLayoutModel#move が返す範囲より後ろのセルは、位置も position も変わらないことを確認する
+ */
+public class GridLayoutModelMoveTest {
+
+    private static final int ITEM_COUNT = 200;
+    private static final int MOVE_COUNT = 500;
+
+    @Test
+    public void moveWithoutSpansReturnsMovedRange() {
+        GridLayoutModel<Object> model = GridModels.create(ITEM_COUNT, false);
+        assertEquals(30, model.move(10, 30));
+        assertEquals(30, model.move(30, 10));
+        assertEquals(5, model.move(5, 5));
+    }
+
+    @Test
+    public void cellsAfterReturnedIndexDoNotMove() {
+        assertCellsAfterEndDoNotMove(false);
+        assertCellsAfterEndDoNotMove(true);
+    }
+
+    /**
+     * 複数マスのセルがあっても、隣への移動で全てのセルを動かしはしない
+     */
+    @Test
+    public void adjacentMoveWithSpansIsBounded() {
+        GridLayoutModel<Object> model = GridModels.create(ITEM_COUNT, true);
+        int bounded = 0;
+        for (int from = 0; from < ITEM_COUNT - 1; from++) {
+            if (model.move(from, from + 1) < ITEM_COUNT - 1)
+                bounded++;
+            model.move(from + 1, from);
+        }
+        assertTrue(bounded > 0);
+    }
+
+    private void assertCellsAfterEndDoNotMove(boolean spanned) {
+        GridLayoutModel<Object> model = GridModels.create(ITEM_COUNT, spanned);
+        Random random = new Random(1);
+        for (int i = 0; i < MOVE_COUNT; i++) {
+            int from = random.nextInt(ITEM_COUNT);
+            int to = random.nextInt(ITEM_COUNT);
+            int[][] before = snapshot(model);
+
+            int end = model.move(from, to);
+
+            assertTrue(end >= Math.max(from, to));
+            int[][] after = snapshot(model);
+            for (int index = end + 1; index < ITEM_COUNT; index++) {
+                for (int k = 0; k < before[index].length; k++)
+                    assertEquals("index " + index + " after move " + from + " -> " + to,
+                            before[index][k], after[index][k]);
+            }
+        }
+    }
+
+    private static int[][] snapshot(GridLayoutModel<Object> model) {
+        int[][] slots = new int[ITEM_COUNT][];
+        for (int index = 0; index < ITEM_COUNT; index++) {
+            slots[index] = new int[] {
+                model.positionAt(index),
+                model.slotLeft(index), model.slotTop(index),
+                model.slotWidth(index), model.slotHeight(index),
+            };
+        }
+        return slots;
+    }
+
+}
@@ -5,37 +5,48 @@ import java.util.Random;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.os.Bundle;
 import android.view.Display;
 import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import com.example.dragdropgrid.lib.BaseDragDropGridAdapter;
 import com.example.dragdropgrid.lib.DragDropGrid;
 import com.example.dragdropgrid.lib.DragDropGrid.DragAndDropElement;
 import com.example.dragdropgrid.lib.DragDropGrid.DragSource;
-import com.example.dragdropgrid.lib.DragDropGridAdapter;
+import com.example.dragdropgrid.lib.SpannedDragDropGridAdapter;
 
 @SuppressLint("Registered")
 public class MainActivity extends Activity implements DragSource {
-    
+
     DragDropGrid mGrid;
-    DragDropGridAdapter mAdapter;
+    SmapleAdapter mAdapter;
+
+    /**
+     * Adapter で切り替えるモード
+     */
+    boolean mSpans;
+    boolean mAutomatic;
+    boolean mRendered;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        
+
         mGrid = (DragDropGrid) findViewById(R.id.drag_grid);
         mGrid.setDragSource(this);
-        
-        mAdapter = new SmapleAdapter();
+
+        mAdapter = createAdapter();
         mGrid.setAdapter(mAdapter);
     }
 
@@ -45,21 +56,86 @@ public class MainActivity extends Activity implements DragSource {
         return true;
     }
 
+    /**
+     * メニューから各モードを1つずつ切り替える
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (!item.isCheckable())
+            return super.onOptionsItemSelected(item);
+
+        boolean enabled = !item.isChecked();
+        item.setChecked(enabled);
+        switch (item.getItemId()) {
+        case R.id.mode_scrolling:
+            mGrid.setScrollingEnabled(enabled);
+            break;
+        case R.id.mode_virtualization:
+            mGrid.setVirtualizationEnabled(enabled);
+            break;
+        case R.id.mode_renderer:
+            // 描画したセルはクリックが通知されない
+            mRendered = enabled;
+            mGrid.setCellRenderer(enabled ? mAdapter : null);
+            break;
+        case R.id.mode_translation:
+            mGrid.setAnimationMode(enabled
+                ? DragDropGrid.ANIMATION_MODE_TRANSLATION : DragDropGrid.ANIMATION_MODE_LAYOUT);
+            break;
+        case R.id.mode_coalescing:
+            mGrid.setDragLocationCoalescingEnabled(enabled);
+            break;
+        case R.id.mode_overlay:
+            mGrid.setDragMode(enabled ? DragDropGrid.DRAG_MODE_OVERLAY : DragDropGrid.DRAG_MODE_LAYOUT);
+            break;
+        case R.id.mode_fixed_size:
+            mGrid.setFixedCellSizeEnabled(enabled);
+            break;
+        case R.id.mode_selection:
+            // 選択中はタップで選択を切り替えるので、クリックは通知されない
+            mGrid.setSelectionModeEnabled(enabled);
+            break;
+        case R.id.mode_spans:
+            mSpans = enabled;
+            resetAdapter();
+            break;
+        case R.id.mode_automatic:
+            mAutomatic = enabled;
+            mGrid.setColumnChangeAnimationEnabled(enabled);
+            resetAdapter();
+            break;
+        default:
+            return super.onOptionsItemSelected(item);
+        }
+        return true;
+    }
+
+    private SmapleAdapter createAdapter() {
+        return mSpans ? new SpannedSmapleAdapter() : new SmapleAdapter();
+    }
+
+    private void resetAdapter() {
+        mAdapter = createAdapter();
+        if (mRendered)
+            mGrid.setCellRenderer(mAdapter);
+        mGrid.setAdapter(mAdapter);
+    }
+
     @Override
     public void onDragStartPreced() {
-        
+
     }
 
     @Override
     public void onDragEnded() {
-        
+
     }
 
     @Override
     public void onClickDragAndDropElement(DragAndDropElement v) {
-        
+
     }
-    
+
     public int getWindowWidth() {
         WindowManager wm = (WindowManager) getApplicationContext().getSystemService(Context.WINDOW_SERVICE);
         Display display = wm.getDefaultDisplay();
@@ -67,41 +143,79 @@ public class MainActivity extends Activity implements DragSource {
         display.getSize(size);
         return size.x;
     }
-    
-    public class SmapleAdapter implements DragDropGridAdapter {
+
+    public class SmapleAdapter extends BaseDragDropGridAdapter implements DragDropGrid.CellRenderer {
+
+        private final int[] mColors;
+        private final Paint mFillPaint = new Paint();
+        private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final Paint mSelectedPaint = new Paint();
+        /**
+         * 列数を自動で決める場合のセルの幅
+         */
+        private final int mAutomaticCellWidth;
+
+        public SmapleAdapter() {
+            Random rnd = new Random();
+            mColors = new int[itemCount()];
+            for (int i = 0; i < mColors.length; i++)
+                mColors[i] = Color.argb(255, rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+
+            mTextPaint.setColor(Color.WHITE);
+            mTextPaint.setTextSize(17.f * getResources().getDisplayMetrics().scaledDensity);
+            mTextPaint.setTextAlign(Paint.Align.CENTER);
+
+            mSelectedPaint.setColor(Color.WHITE);
+            mSelectedPaint.setStyle(Paint.Style.STROKE);
+            mSelectedPaint.setStrokeWidth(4 * getResources().getDisplayMetrics().density);
+            mAutomaticCellWidth = (int) (110 * getResources().getDisplayMetrics().density);
+        }
+
+        @Override
+        public void drawCell(Canvas canvas, int index, int position, int width, int height) {
+            mFillPaint.setColor(mColors[position]);
+            canvas.drawRect(0, 0, width, height, mFillPaint);
+            float y = (height - mTextPaint.ascent() - mTextPaint.descent()) / 2;
+            canvas.drawText(String.valueOf(index), width / 2f, y, mTextPaint);
+            if (mGrid.isItemSelected(index))
+                canvas.drawRect(0, 0, width, height, mSelectedPaint);
+        }
 
         @Override
         public int itemCount() {
-            return rowCount() * columnCount();
+            return 30 * 3;
         }
 
         @Override
-        public View getView(int index) {
-            
-            Random rnd = new Random(); 
-            int color = Color.argb(255, rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
-            
-            DragView r = new DragView(getApplicationContext());
-            r.setBackgroundColor(color);
+        public View getView(int index, View convertView) {
+
+            DragView r;
+            if (convertView instanceof DragView) {
+                r = (DragView) convertView;
+            } else {
+                r = new DragView(getApplicationContext());
+                r.setLayoutParams(new ViewGroup.LayoutParams(getChildViewWidth(), getChildViewHeight()));
+            }
+            r.setBackgroundColor(mColors[index]);
             r.setIndex(index);
-            r.setLayoutParams(new ViewGroup.LayoutParams(getChildViewWidth(), getChildViewHeight()));
-            
+
             return r;
         }
 
         @Override
         public int rowCount() {
-            return 30;
+            return mAutomatic ? AUTOMATIC : 30;
         }
 
         @Override
         public int columnCount() {
-            return 3;
+            // AUTOMATIC の場合は幅と getChildViewWidth から決まる
+            return mAutomatic ? AUTOMATIC : 3;
         }
 
         @Override
         public int getChildViewWidth() {
-            return getWindowWidth() / columnCount();
+            return mAutomatic ? mAutomaticCellWidth : getWindowWidth() / columnCount();
         }
 
         @Override
@@ -111,7 +225,7 @@ public class MainActivity extends Activity implements DragSource {
 
         @Override
         public int getViewHeight() {
-            return getChildViewHeight() * rowCount();
+            return mAutomatic ? 0 : getChildViewHeight() * rowCount();
         }
 
         @Override
@@ -133,17 +247,34 @@ public class MainActivity extends Activity implements DragSource {
         public View getFooter() {
             return null;
         }
-        
+
+    }
+
+    /**
+     * 2x1 と 1x2 のセルが混ざる Adapter
+     */
+    public class SpannedSmapleAdapter extends SmapleAdapter implements SpannedDragDropGridAdapter {
+
+        @Override
+        public int getColumnSpan(int position) {
+            return position % 9 == 0 ? 2 : 1;
+        }
+
+        @Override
+        public int getRowSpan(int position) {
+            return position % 13 == 6 ? 2 : 1;
+        }
+
     }
-    
+
     private class DragView extends RelativeLayout implements DragAndDropElement {
 
         private int mIndex;
         private TextView mTextView;
-        
+
         public DragView(Context context) {
             super(context);
-            
+
             RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
                 RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
             params.addRule(RelativeLayout.CENTER_IN_PARENT);
@@ -177,7 +308,7 @@ public class MainActivity extends Activity implements DragSource {
             this.mIndex = index;
             this.mTextView.setText(String.valueOf(mIndex));
         }
-        
+
     }
 
 }
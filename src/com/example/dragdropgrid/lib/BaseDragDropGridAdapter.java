@@ -0,0 +1,56 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 変更通知の仕組みを持った DragDropGridAdapter
+ */
+public abstract class BaseDragDropGridAdapter implements DragDropGridAdapter {
+
+    private final List<Observer> mObservers = new ArrayList<Observer>();
+
+    @Override
+    public void registerObserver(Observer observer) {
+        if (!mObservers.contains(observer))
+            mObservers.add(observer);
+    }
+
+    @Override
+    public void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    public void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--)
+            mObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+    }
+
+    public void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--)
+            mObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+    }
+
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        for (int i = mObservers.size() - 1; i >= 0; i--)
+            mObservers.get(i).onItemMoved(fromPosition, toPosition);
+    }
+
+    public void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--)
+            mObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+    }
+
+}
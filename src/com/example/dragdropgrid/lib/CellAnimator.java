@@ -0,0 +1,256 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.os.Build;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * グリッド内のセル移動をまとめて進めるアニメーション
+ *
+ * 移動中の全セルを1つのフレームコールバックで更新する。移動状態のオブジェクトは
+ * 使い回し、移動中のセルに新しい移動先を指定した場合はその場で行き先だけを差し替える。
+ * 移動中のセルは View から引けるようにしておき、全セルを一度に動かしても線形探索しない。
+ */
+final class CellAnimator implements FrameTicker.Callback {
+
+    /**
+     * 移動が完了した時の通知
+     */
+    interface EndListener {
+        void onMoveEnded(View v);
+    }
+
+    private static final class Move {
+        View view;
+        float fromX, fromY;
+        float toX, toY;
+        long startTime;
+        long duration;
+        int layerType;
+        EndListener listener;
+        /**
+         * mActive 内の位置
+         */
+        int slot;
+    }
+
+    private final FrameTicker mTicker;
+    private final Interpolator mInterpolator = new AccelerateDecelerateInterpolator();
+    private final List<Move> mActive = new ArrayList<Move>();
+    private final Map<View, Move> mMoves = new IdentityHashMap<View, Move>();
+    private final List<Move> mPool = new ArrayList<Move>();
+    /**
+     * translationX/Y で動かす
+     */
+    private boolean mTranslationMode;
+    /**
+     * 開始した移動と、途中で止めた移動の数 (累計)
+     */
+    private int mStartedCount;
+    private int mCancelledCount;
+
+    CellAnimator(View host) {
+        mTicker = new FrameTicker(host, this);
+    }
+
+    void setTranslationMode(boolean translationMode) {
+        mTranslationMode = translationMode;
+    }
+
+    /**
+     * 現在の位置から移動先までアニメーションさせる
+     *
+     * 既に移動中であれば、行き先と時間だけを差し替える。
+     * 行き先が変わらない場合は何もしない (止まっている場合はその場で完了を通知する)
+     */
+    void animate(View v, float toX, float toY, long duration, EndListener listener) {
+        Move move = find(v);
+        int l = (int) toX;
+        int t = (int) toY;
+        if (isHeadingTo(v, move, l, t)) {
+            if (move != null) {
+                move.listener = listener;
+            } else if (listener != null) {
+                listener.onMoveEnded(v);
+            }
+            return;
+        }
+
+        if (move == null) {
+            move = obtain();
+            move.view = v;
+            move.layerType = v.getLayerType();
+            addActive(move);
+            mStartedCount++;
+            if (mTranslationMode && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                v.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
+
+        if (mTranslationMode) {
+            // 移動先に一度だけ layout し、見た目の位置は translation で保つ
+            float x = v.getX();
+            float y = v.getY();
+            v.layout(l, t, l + v.getWidth(), t + v.getHeight());
+            v.setTranslationX(x - l);
+            v.setTranslationY(y - t);
+            move.fromX = v.getTranslationX();
+            move.fromY = v.getTranslationY();
+            move.toX = 0;
+            move.toY = 0;
+        } else {
+            move.fromX = v.getLeft();
+            move.fromY = v.getTop();
+            move.toX = l;
+            move.toY = t;
+        }
+        move.startTime = System.nanoTime();
+        move.duration = duration * 1000000L;
+        move.listener = listener;
+
+        mTicker.post();
+    }
+
+    private boolean isHeadingTo(View v, Move move, int l, int t) {
+        if (mTranslationMode) {
+            if (v.getLeft() != l || v.getTop() != t)
+                return false;
+            return move != null || (v.getTranslationX() == 0 && v.getTranslationY() == 0);
+        }
+        if (move != null)
+            return move.toX == l && move.toY == t;
+        return v.getLeft() == l && v.getTop() == t;
+    }
+
+    int getStartedCount() {
+        return mStartedCount;
+    }
+
+    int getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    /**
+     * 現在の位置で止める
+     */
+    void cancel(View v) {
+        Move move = find(v);
+        if (move == null)
+            return;
+        removeActive(move);
+        recycle(move);
+        mCancelledCount++;
+        if (mActive.isEmpty())
+            mTicker.cancel();
+    }
+
+    /**
+     * 移動先まで進めて終了する
+     */
+    void end(View v) {
+        Move move = find(v);
+        if (move == null)
+            return;
+        removeActive(move);
+        apply(move, 1f);
+        finish(move);
+        if (mActive.isEmpty())
+            mTicker.cancel();
+    }
+
+    /**
+     * 全ての移動を移動先まで進めて終了する
+     */
+    void endAll() {
+        while (!mActive.isEmpty()) {
+            Move move = mActive.get(mActive.size() - 1);
+            removeActive(move);
+            apply(move, 1f);
+            finish(move);
+        }
+        mTicker.cancel();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long now = System.nanoTime();
+        for (int i = mActive.size() - 1; i >= 0; i--) {
+            Move move = mActive.get(i);
+            float fraction = move.duration > 0 ? (float) (now - move.startTime) / move.duration : 1f;
+            if (fraction >= 1f) {
+                apply(move, 1f);
+                // 末尾 (処理済み) のセルが i に入るので、そのまま i - 1 から続けられる
+                removeActive(move);
+                finish(move);
+            } else {
+                apply(move, mInterpolator.getInterpolation(Math.max(0f, fraction)));
+            }
+        }
+
+        if (!mActive.isEmpty())
+            mTicker.post();
+    }
+
+    private void apply(Move move, float r) {
+        View v = move.view;
+        float x = r * move.toX + (1 - r) * move.fromX;
+        float y = r * move.toY + (1 - r) * move.fromY;
+        if (mTranslationMode) {
+            v.setTranslationX(x);
+            v.setTranslationY(y);
+        } else {
+            int l = (int) x;
+            int t = (int) y;
+            v.layout(l, t, l + v.getWidth(), t + v.getHeight());
+        }
+    }
+
+    private void finish(Move move) {
+        View v = move.view;
+        EndListener listener = move.listener;
+        recycle(move);
+        if (listener != null)
+            listener.onMoveEnded(v);
+    }
+
+    private Move find(View v) {
+        return mMoves.get(v);
+    }
+
+    private void addActive(Move move) {
+        move.slot = mActive.size();
+        mActive.add(move);
+        mMoves.put(move.view, move);
+    }
+
+    /**
+     * 末尾の移動を空いた位置へ移して取り除く
+     */
+    private void removeActive(Move move) {
+        Move tail = mActive.remove(mActive.size() - 1);
+        if (tail != move) {
+            mActive.set(move.slot, tail);
+            tail.slot = move.slot;
+        }
+        mMoves.remove(move.view);
+    }
+
+    private Move obtain() {
+        int last = mPool.size() - 1;
+        return last >= 0 ? mPool.remove(last) : new Move();
+    }
+
+    private void recycle(Move move) {
+        if (move.view.getLayerType() != move.layerType)
+            move.view.setLayerType(move.layerType, null);
+        move.view = null;
+        move.listener = null;
+        mPool.add(move);
+    }
+
+}
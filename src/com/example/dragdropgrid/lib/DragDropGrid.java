@@ -3,36 +3,71 @@ package com.example.dragdropgrid.lib;
 import java.util.ArrayList;
 import java.util.List;
 
-import android.animation.Animator;
-import android.animation.Animator.AnimatorListener;
-import android.animation.ValueAnimator;
-import android.animation.ValueAnimator.AnimatorUpdateListener;
+import android.annotation.TargetApi;
 import android.content.ClipData;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.Display;
 import android.view.DragEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnDragListener;
 import android.view.View.OnTouchListener;
 import android.view.ViewGroup;
-import android.view.WindowManager;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 
 public class DragDropGrid extends ViewGroup implements View.OnLongClickListener, OnTouchListener, OnDragListener,
     View.OnClickListener {
     
     private static final String LOG_TAG = "DragDropGrid";
 
+    /**
+     * ドラッグイベントのログ出力 (リリースビルドでは false のままにしておく)
+     */
+    private static final boolean DEBUG = false;
+
     /**
      * アニメーションの実行時間
      */
     private static final int ANIMATION_DURATION = 300;
 
+    /**
+     * 自動スクロールを開始する端からの距離 (dp)
+     */
+    private static final int AUTO_SCROLL_EDGE_DP = 48;
+    /**
+     * 自動スクロールの最大速度 (dp/秒)
+     */
+    private static final int AUTO_SCROLL_MAX_SPEED_DP = 1200;
+
+    /**
+     * アニメーション毎に layout() で位置を動かす
+     */
+    public static final int ANIMATION_MODE_LAYOUT = 0;
+    /**
+     * 移動先に一度だけ layout() し、translationX/Y を 0 に戻していく
+     */
+    public static final int ANIMATION_MODE_TRANSLATION = 1;
+
+    /**
+     * ドラッグ中のセルを layout() で動かし、最前面に移す
+     */
+    public static final int DRAG_MODE_LAYOUT = 0;
+    /**
+     * ドラッグ中のセルを画像にしてグリッドの上に描画し、元のセルは隠しておく
+     */
+    public static final int DRAG_MODE_OVERLAY = 1;
+
     /**
      * 各ChildViewに通知するinterface
      */
@@ -53,29 +88,106 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
     }
 
     /**
-     * 親
+     * ChildView を作らずに、グリッドがセルを直接描画するための interface
+     * 
+     * ドラッグするセルだけは Adapter から View を作って表示する
      */
-    private DragSource mDragSource;
+    public interface CellRenderer {
+        /**
+         * @param canvas セルの左上を原点にした Canvas
+         * @param index セルの index
+         * @param position Adapter の position
+         * @param width セルの幅
+         * @param height セルの高さ
+         */
+        void drawCell(Canvas canvas, int index, int position, int width, int height);
+    }
+
     /**
-     * アダプター
+     * ドロップで並び順が変わった時に通知する interface
+     * 
+     * 並び順はグリッドが保持しているため、Adapter 側のデータを並び替える必要は無い。
+     * 全体の並び順は {@link DragDropGrid#getOrder()} で取得できる。
      */
-    private DragDropGridAdapter mAdapter;
+    public interface OnReorderListener {
+        /**
+         * @param fromIndex ドラッグ開始時の index
+         * @param toIndex ドロップした index
+         */
+        void onReorder(int fromIndex, int toIndex);
+    }
+
     /**
-     * ChildViewの幅
+     * 選択した複数のセルをまとめてドラッグした時の通知を受け取る interface
      */
-    private int columnWidthSize;
+    public interface OnGroupReorderListener {
+        /**
+         * @param fromIndexes ドラッグ開始時の各セルの index (昇順)
+         * @param toIndex ドロップ後のまとまりの先頭の index
+         */
+        void onGroupReorder(int[] fromIndexes, int toIndex);
+    }
+
     /**
-     * ChildViewの高さ
+     * 他の DragDropGrid でドラッグ中のセルを受け入れる interface
+     * 
+     * データの移動は Adapter 側で行う。source の Adapter から取り除いて notifyItemRemoved し、
+     * このグリッドの Adapter に追加して notifyItemInserted すること。どちらのグリッドも
+     * 作り直さず、通知に応じて隙間を閉じる/開けるアニメーションを行い、ドラッグはこのグリッドが引き継ぐ。
+     * 通知は onTransfer から戻る前に行うこと。受け入れなかった場合、同じドラッグの間は問い合わせ直さない。
      */
-    private int rowHeightSize;
+    public interface OnTransferListener {
+        /**
+         * @param source ドラッグ元のグリッド
+         * @param sourcePosition ドラッグ中のセルの source での position
+         * @param toIndex ドラッグ位置の index (セルが無い場合は末尾)
+         * @return このグリッドの Adapter に追加した position, 受け入れない場合は -1
+         */
+        int onTransfer(DragDropGrid source, int sourcePosition, int toIndex);
+    }
+
+    /**
+     * ドラッグ毎の計測結果を受け取る interface
+     */
+    public interface OnDragSessionListener {
+        /**
+         * ACTION_DRAG_ENDED で呼ばれる
+         */
+        void onDragSessionEnded(DragSessionMetrics metrics);
+    }
+
+    /**
+     * ドラッグの経過を計測するための interface
+     * 
+     * 文字列を組み立てずに済むよう、プリミティブ値だけを渡す
+     */
+    public interface DragTraceListener {
+        /**
+         * @param event TRACE_* のいずれか
+         * @param index 対象セルの index (無い場合は -1)
+         * @param x グリッド座標 X (TRACE_REORDER の場合は移動元の index)
+         * @param y グリッド座標 Y (TRACE_REORDER の場合は移動先の index)
+         * @param timeNanos System.nanoTime()
+         */
+        void onDragTrace(int event, int index, int x, int y, long timeNanos);
+    }
+
+    public static final int TRACE_DRAG_STARTED = 1;
+    public static final int TRACE_DRAG_ENTERED = 2;
+    public static final int TRACE_DRAG_LOCATION = 3;
+    public static final int TRACE_DRAG_EXITED = 4;
+    public static final int TRACE_DROP = 5;
+    public static final int TRACE_DRAG_ENDED = 6;
+    public static final int TRACE_REORDER = 7;
+
     /**
-     * 行
+     * 親
      */
-    private int computedRowCount;
+    private DragSource mDragSource;
     /**
-     * 列
+     * アダプター
      */
-    private int computedColumnCount;
+    private DragDropGridAdapter mAdapter;
     /**
      * タッチポイントX
      */
@@ -85,11 +197,11 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
      */
     private int mLastTouchY;
     /**
-     * 初期位置X
+     * 初期位置X (グリッド座標)
      */
     private int initialX;
     /**
-     * 初期位置Y
+     * 初期位置Y (グリッド座標)
      */
     private int initialY;
 
@@ -101,6 +213,60 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
      * ドラッグ中のViewの位置
      */
     private int mLastOverlapIndex = -1;
+    /**
+     * ドラッグ中のViewの index (ドロップまで DragAndDropElement#setIndex は呼ばない)
+     */
+    private int mDraggingIndex = -1;
+    /**
+     * ドラッグ開始時の index
+     */
+    private int mDragStartIndex = -1;
+    /**
+     * ドラッグ中のセルに変更通知があった (ドロップ後に Adapter から取り直す)
+     */
+    private boolean mRebindDraggingView;
+    /**
+     * 並び替えの通知
+     */
+    private OnReorderListener mReorderListener;
+    private OnGroupReorderListener mGroupReorderListener;
+    /**
+     * 他のグリッドからの受け入れ (null の場合は受け入れない)
+     */
+    private OnTransferListener mTransferListener;
+    /**
+     * 複数選択モード
+     */
+    private boolean mSelectionMode;
+    /**
+     * 選択状態と、まとめてドラッグ中の並び順
+     */
+    private final GroupDragModel mGroupDrag = new GroupDragModel();
+    /**
+     * セルを直接描画する (null の場合は ChildView を使う)
+     */
+    private CellRenderer mCellRenderer;
+    /**
+     * セルの大きさを Adapter の getChildViewWidth/Height に固定する
+     */
+    private boolean mFixedCellSize;
+    /**
+     * 列数が変わった時に、セルを新しい位置へアニメーションさせる
+     */
+    private boolean mAnimateColumnChanges;
+    /**
+     * 最後に layout した時の列数 (未 layout の場合は 0)
+     */
+    private int mLaidOutColumnCount;
+    /**
+     * 固定サイズのセルを measure した時の MeasureSpec (未計測の場合は 0)
+     */
+    private int mCellWidthSpec;
+    private int mCellHeightSpec;
+    /**
+     * 復元待ちの並び順 (次の layout で反映する)
+     */
+    private int[] mPendingOrder;
     /**
      * タッチのギャップ
      */
@@ -113,14 +279,152 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
      * Footer領域
      */
     private View mFooter;
+    /**
+     * セルの配置と並び順 (index -> Adapter の position, index -> ChildView)
+     */
+    private final GridLayoutModel<View> mLayout = new GridLayoutModel<View>();
+    /**
+     * 画面幅、Adapter の寸法のキャッシュ
+     */
+    private final GridMetrics mMetrics;
+    /**
+     * 表示範囲のセルだけを生成するモード
+     */
+    private boolean mVirtualized;
+    /**
+     * 表示範囲外に余分に生成しておく行数
+     */
+    private int mOverscanRowCount = 1;
+    /**
+     * 再利用待ちのセル
+     */
+    private final List<View> mRecycledViews = new ArrayList<View>();
+    /**
+     * 生成済みセルの index 範囲
+     */
+    private int mFirstBoundIndex;
+    private int mLastBoundIndex = -1;
+    /**
+     * 表示範囲の計算用
+     */
+    private final Rect mVisibleRect = new Rect();
+    /**
+     * 最後に計測した幅
+     */
+    private int mLastWidthSize;
+    /**
+     * 並び替えアニメーションの方式
+     */
+    private int mAnimationMode = ANIMATION_MODE_LAYOUT;
+    /**
+     * セル移動のアニメーション
+     */
+    private final CellAnimator mCellAnimator = new CellAnimator(this);
+    /**
+     * ドラッグ中のセルの描画方式
+     */
+    private int mDragMode = DRAG_MODE_LAYOUT;
+    /**
+     * DRAG_MODE_OVERLAY で描画するセルの画像
+     */
+    private final DragOverlay mDragOverlay = new DragOverlay(this);
+    /**
+     * 移動先セルの切り替えの間引き
+     */
+    private final DropTargetFilter mDropTargetFilter = new DropTargetFilter(mLayout);
+    /**
+     * 指が止まっていても dwell time 後に移動先を確定させる
+     */
+    private final Runnable mDwellRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mDragLocationPending)
+                flushDragLocation();
+            else if (mDraggingView != null)
+                handleDragLocation(mLastDragX, mLastDragY);
+        }
+    };
+    /**
+     * 最後のドラッグ位置
+     */
+    private int mLastDragX;
+    private int mLastDragY;
+    /**
+     * ドラッグ中の自動スクロール
+     */
+    private final EdgeAutoScroller mAutoScroller = new EdgeAutoScroller(this, new AutoScrollTarget());
+    private boolean mAutoScrollEnabled = true;
+    /**
+     * 自動スクロールさせる親 View
+     */
+    private View mScrollParent;
+    /**
+     * グリッド自身でスクロールする (measure の高さは親から渡された大きさになる)
+     */
+    private boolean mScrollingEnabled;
+    private final ViewportScroller mViewportScroller = new ViewportScroller(this, new ViewportScroller.Host() {
+        @Override
+        public int getMaxScrollY() {
+            return DragDropGrid.this.getMaxScrollY();
+        }
+    });
+    /**
+     * Header, セル, Footer を合わせた高さ
+     */
+    private int mContentHeight;
+    /**
+     * ドラッグの計測 (null の場合は何もしない)
+     */
+    private DragTraceListener mTraceListener;
+    /**
+     * android.os.Trace のセクションを出力する
+     */
+    private boolean mTraceSectionsEnabled;
+    /**
+     * ドラッグ毎の計測 (listener が無い場合は null)
+     */
+    private OnDragSessionListener mSessionListener;
+    private DragSessionRecorder mSessionRecorder;
+    /**
+     * ACTION_DRAG_LOCATION をフレーム毎に1回だけ処理する
+     */
+    private boolean mCoalesceDragLocation;
+    /**
+     * 未処理のドラッグ位置
+     */
+    private boolean mDragLocationPending;
+    private int mPendingDragX;
+    private int mPendingDragY;
+    private final FrameTicker mDragLocationTicker = new FrameTicker(this, new FrameTicker.Callback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flushDragLocation();
+        }
+    });
+
+    /**
+     * Adapter の変更通知
+     */
+    private final AdapterObserver mAdapterObserver = new AdapterObserver();
+
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener =
+        new ViewTreeObserver.OnScrollChangedListener() {
+            @Override
+            public void onScrollChanged() {
+                if (mVirtualized || mCellRenderer != null)
+                    fillVisibleWindow(false);
+            }
+        };
 
     public DragDropGrid(Context context) {
         super(context);
+        mMetrics = new GridMetrics(context);
         init();
     }
 
     public DragDropGrid(Context context, AttributeSet attrs) {
         super(context, attrs);
+        mMetrics = new GridMetrics(context);
         init();
     }
 
@@ -129,6 +433,10 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
             this.useDummyAdapter();
         }
 
+        float density = getResources().getDisplayMetrics().density;
+        mAutoScroller.setEdgeSize((int) (AUTO_SCROLL_EDGE_DP * density));
+        mAutoScroller.setMaxSpeed(AUTO_SCROLL_MAX_SPEED_DP * density);
+
         setOnDragListener(this);
         setOnTouchListener(this);
         setOnLongClickListener(this);
@@ -140,8 +448,391 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
         this.mDragSource = s;
     }
 
+    public void setOnReorderListener(OnReorderListener listener) {
+        mReorderListener = listener;
+    }
+
+    public void setOnGroupReorderListener(OnGroupReorderListener listener) {
+        mGroupReorderListener = listener;
+    }
+
+    /**
+     * 他の DragDropGrid からドラッグ中のセルを受け入れる (null の場合は受け入れない)
+     */
+    public void setOnTransferListener(OnTransferListener listener) {
+        mTransferListener = listener;
+    }
+
+    /**
+     * 複数選択モード (既定は無効)
+     * 
+     * 有効にすると、タップでセルの選択を切り替え、選択中のセルをロングタップすると
+     * 選択中の全てのセルをまとめてドラッグする。選択状態は View#setSelected でセルに反映する。
+     * Adapter から挿入/削除/移動を通知された場合は選択を解除する。
+     */
+    public void setSelectionModeEnabled(boolean enabled) {
+        if (mSelectionMode == enabled)
+            return;
+        if (!enabled)
+            clearSelection();
+        mSelectionMode = enabled;
+    }
+
+    public boolean isSelectionModeEnabled() {
+        return mSelectionMode;
+    }
+
+    /**
+     * セルの選択状態を変える
+     * 
+     * @return index が範囲外の場合は false
+     */
+    public boolean setItemSelected(int index, boolean selected) {
+        if (index < 0 || index >= mLayout.getItemCount())
+            return false;
+        mGroupDrag.setSelected(mLayout.positionAt(index), selected, mLayout.getItemCount());
+        
+        View cell = mLayout.cellAt(index);
+        if (cell != null)
+            cell.setSelected(selected);
+        if (mCellRenderer != null)
+            invalidate();
+        return true;
+    }
+
+    public boolean isItemSelected(int index) {
+        if (index < 0 || index >= mLayout.getItemCount())
+            return false;
+        return mGroupDrag.isSelected(mLayout.positionAt(index));
+    }
+
+    public int getSelectedCount() {
+        return mGroupDrag.getSelectedCount();
+    }
+
+    /**
+     * 選択中のセルの index (昇順)
+     */
+    public int[] getSelectedIndexes() {
+        int[] indexes = new int[mGroupDrag.getSelectedCount()];
+        int count = mLayout.getItemCount();
+        int n = 0;
+        for (int index = 0; index < count && n < indexes.length; index++) {
+            if (mGroupDrag.isSelected(mLayout.positionAt(index)))
+                indexes[n++] = index;
+        }
+        return indexes;
+    }
+
+    public void clearSelection() {
+        if (!mGroupDrag.clearSelection())
+            return;
+        int count = mLayout.getItemCount();
+        for (int index = 0; index < count; index++) {
+            View cell = mLayout.cellAt(index);
+            if (cell != null)
+                cell.setSelected(false);
+        }
+        if (mCellRenderer != null)
+            invalidate();
+    }
+
+    /**
+     * 現在の並び順
+     * 
+     * @return index 毎の Adapter の position
+     */
+    public int[] getOrder() {
+        return mLayout.copyOrder();
+    }
+
+    /**
+     * index に表示している Adapter の position
+     */
+    public int getPositionAt(int index) {
+        return mLayout.positionAt(index);
+    }
+
+    /**
+     * 並び順をまとめて変更し、移動するセルを一度にアニメーションさせる
+     * 
+     * @param order index 毎の Adapter の position (0 から件数 - 1 の並べ替え)
+     * @return ドラッグ中や order が件数に合わない場合は false (何も変更しない)
+     */
+    public boolean applyOrder(int[] order) {
+        if (mDraggingView != null || !mLayout.setOrder(order))
+            return false;
+        
+        placeCells(true);
+        return true;
+    }
+
+    /**
+     * セルの移動 (fromIndexes[i] から toIndexes[i]) を順に適用し、まとめてアニメーションさせる
+     * 
+     * @return ドラッグ中や index が範囲外の場合は false (何も変更しない)
+     */
+    public boolean moveItems(int[] fromIndexes, int[] toIndexes) {
+        if (fromIndexes.length != toIndexes.length)
+            return false;
+        
+        int[] order = mLayout.copyOrder();
+        int count = order.length;
+        for (int i = 0; i < fromIndexes.length; i++) {
+            int from = fromIndexes[i];
+            int to = toIndexes[i];
+            if (from < 0 || from >= count || to < 0 || to >= count)
+                return false;
+            
+            int position = order[from];
+            if (from < to)
+                System.arraycopy(order, from + 1, order, from, to - from);
+            else
+                System.arraycopy(order, to, order, to + 1, from - to);
+            order[to] = position;
+        }
+        return applyOrder(order);
+    }
+
+    /**
+     * 並び順の変更後、セルを新しい index の位置へ移す
+     * 
+     * アニメーションさせるのは移動元か移動先が表示範囲に入るセルだけで、
+     * それ以外はその場で移動先に layout する
+     */
+    private void placeCells(boolean animate) {
+        if (!animate || !getLocalVisibleRect(mVisibleRect))
+            mVisibleRect.setEmpty();
+        
+        int count = mLayout.getItemCount();
+        for (int index = 0; index < count; index++) {
+            View v = mLayout.cellAt(index);
+            if (v == null)
+                continue;
+            
+            int left = mLayout.slotLeft(index);
+            int top = mLayout.slotTop(index);
+            if (((DragAndDropElement) v).getIndex() == index) {
+                // index が同じでも、ドラッグ中に動いていたり複数マスのセルに押し出されたりして位置が変わる
+                if (v.getLeft() == left && v.getTop() == top)
+                    continue;
+            } else {
+                ((DragAndDropElement) v).setIndex(index);
+                if (mVirtualized && (index < mFirstBoundIndex || index > mLastBoundIndex)) {
+                    // 生成済みの範囲外へ移ったセルは再利用する
+                    recycleCell(index);
+                    continue;
+                }
+            }
+            
+            int fromLeft = (int) v.getX();
+            int fromTop = (int) v.getY();
+            if (mVisibleRect.intersects(fromLeft, fromTop, fromLeft + v.getWidth(), fromTop + v.getHeight())
+                    || mVisibleRect.intersects(left, top, left + v.getWidth(), top + v.getHeight())) {
+                transferAnimation(v, left, top);
+            } else {
+                animationCancel(v);
+                resetTranslation(v);
+                v.layout(left, top, left + v.getWidth(), top + v.getHeight());
+            }
+        }
+        
+        if (mVirtualized && mCellRenderer == null) {
+            for (int index = mFirstBoundIndex; index <= mLastBoundIndex; index++) {
+                if (mLayout.cellAt(index) == null)
+                    bindCell(index);
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * 表示範囲 (+ overscan) のセルだけを生成し、範囲外のセルは再利用する
+     */
+    public void setVirtualizationEnabled(boolean enabled) {
+        if (mVirtualized == enabled)
+            return;
+        mVirtualized = enabled;
+        attachCells();
+    }
+
+    public boolean isVirtualizationEnabled() {
+        return mVirtualized;
+    }
+
+    /**
+     * セルの大きさを Adapter の getChildViewWidth/Height に固定する (既定は無効)
+     * 
+     * 有効にすると、セルは EXACTLY で measure し、大きさが変わった時か
+     * requestLayout されたセルだけを measure し直す
+     */
+    public void setFixedCellSizeEnabled(boolean enabled) {
+        if (mFixedCellSize == enabled)
+            return;
+        mFixedCellSize = enabled;
+        mCellWidthSpec = 0;
+        mCellHeightSpec = 0;
+        requestLayout();
+    }
+
+    public boolean isFixedCellSizeEnabled() {
+        return mFixedCellSize;
+    }
+
+    /**
+     * Adapter の列数が AUTOMATIC の場合に、幅からこの最小幅 (px) で列数を決める
+     * (指定しない場合は Adapter の getChildViewWidth を最小幅にする)
+     * 
+     * 行数が AUTOMATIC の場合はセルの数と列数から決まる。幅が変わった時は
+     * セルを作り直さずに位置だけを計算し直す。
+     */
+    public void setMinCellWidth(int pixels) {
+        mLayout.setMinColumnWidth(pixels);
+        requestLayout();
+    }
+
+    /**
+     * 幅が変わって列数が変わった時に、セルを新しい位置へアニメーションさせる (既定は無効)
+     */
+    public void setColumnChangeAnimationEnabled(boolean enabled) {
+        mAnimateColumnChanges = enabled;
+    }
+
+    /**
+     * セルを ChildView にせず、renderer で直接描画する (null で ChildView に戻す)
+     * 
+     * 表示範囲 (+ overscan) のセルだけを onDraw で描画し、長押ししたセルだけを
+     * Adapter から View を作ってドラッグする。クリックは通知されない。
+     */
+    public void setCellRenderer(CellRenderer renderer) {
+        if (mCellRenderer == renderer)
+            return;
+        mCellRenderer = renderer;
+        setWillNotDraw(renderer == null);
+        attachCells();
+        requestLayout();
+    }
+
+    /**
+     * 表示範囲の上下に余分に生成しておく行数
+     */
+    public void setOverscanRowCount(int rows) {
+        mOverscanRowCount = Math.max(0, rows);
+        if (mVirtualized)
+            requestLayout();
+    }
+
+    /**
+     * 並び替え、ドロップ後のアニメーション方式
+     * 
+     * @param mode {@link #ANIMATION_MODE_LAYOUT} or {@link #ANIMATION_MODE_TRANSLATION}
+     */
+    public void setAnimationMode(int mode) {
+        mAnimationMode = mode;
+        mCellAnimator.setTranslationMode(mode == ANIMATION_MODE_TRANSLATION);
+    }
+
+    public int getAnimationMode() {
+        return mAnimationMode;
+    }
+
+    /**
+     * ドラッグ中のセルの描画方式 (ドラッグ開始時に反映される)
+     * 
+     * @param mode {@link #DRAG_MODE_LAYOUT} or {@link #DRAG_MODE_OVERLAY}
+     */
+    public void setDragMode(int mode) {
+        mDragMode = mode;
+    }
+
+    public int getDragMode() {
+        return mDragMode;
+    }
+
+    /**
+     * ドラッグの経過を受け取る listener (既定は無し)
+     */
+    public void setDragTraceListener(DragTraceListener listener) {
+        mTraceListener = listener;
+    }
+
+    /**
+     * systrace/Perfetto 用に android.os.Trace のセクションを出力する (API 18 以上, 既定は無効)
+     */
+    public void setTraceSectionsEnabled(boolean enabled) {
+        mTraceSectionsEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * ACTION_DRAG_LOCATION を最新の位置だけ残してフレーム毎に1回処理する (既定は無効)
+     * 
+     * Enter/Exit/Drop の前には未処理の位置を先に処理するため、通知の順序は変わらない
+     */
+    public void setDragLocationCoalescingEnabled(boolean enabled) {
+        if (!enabled)
+            flushDragLocation();
+        mCoalesceDragLocation = enabled;
+    }
+
+    public boolean isDragLocationCoalescingEnabled() {
+        return mCoalesceDragLocation;
+    }
+
+    /**
+     * ドラッグ毎にフレーム時間やイベント数を計測し、終了時に listener へ渡す (null で計測しない)
+     */
+    public void setOnDragSessionListener(OnDragSessionListener listener) {
+        mSessionListener = listener;
+        if (listener == null) {
+            if (mSessionRecorder != null)
+                mSessionRecorder.cancel();
+            mSessionRecorder = null;
+        } else if (mSessionRecorder == null) {
+            mSessionRecorder = new DragSessionRecorder(this);
+        }
+    }
+
+    private void trace(int event, int index, int x, int y) {
+        if (mTraceListener != null)
+            mTraceListener.onDragTrace(event, index, x, y, System.nanoTime());
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void beginTraceSection(String sectionName) {
+        if (mTraceSectionsEnabled)
+            Trace.beginSection(sectionName);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void endTraceSection() {
+        if (mTraceSectionsEnabled)
+            Trace.endSection();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
+        mViewportScroller.release();
+        mDragLocationTicker.cancel();
+        mDragLocationPending = false;
+        removeCallbacks(mDwellRunnable);
+        if (mSessionRecorder != null)
+            mSessionRecorder.cancel();
+        if (mDraggingView != null && mDragOverlay.isShowing())
+            mDraggingView.setVisibility(View.VISIBLE);
+        mDragOverlay.release();
+        mCellAnimator.endAll();
+        super.onDetachedFromWindow();
+    }
+
     private void useDummyAdapter() {
-        mAdapter = new DragDropGridAdapter() {
+        mAdapter = new BaseDragDropGridAdapter() {
             @Override
             public int rowCount() {
                 return 1;
@@ -153,7 +844,7 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
             }
 
             @Override
-            public View getView(int index) {
+            public View getView(int index, View convertView) {
                 return null;
             }
 
@@ -200,99 +891,484 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
     }
 
     public void setAdapter(DragDropGridAdapter adapter) {
-        this.removeAllViews();
-        
+        if (mAdapter != null)
+            mAdapter.unregisterObserver(mAdapterObserver);
         this.mAdapter = adapter;
-        this.addChildView();
+        mAdapter.registerObserver(mAdapterObserver);
+        
+        if (adapter instanceof SpannedDragDropGridAdapter) {
+            final SpannedDragDropGridAdapter spanned = (SpannedDragDropGridAdapter) adapter;
+            mLayout.setSpanLookup(new SpanPacker.SpanLookup() {
+                @Override
+                public int getColumnSpan(int position) {
+                    return spanned.getColumnSpan(position);
+                }
+
+                @Override
+                public int getRowSpan(int position) {
+                    return spanned.getRowSpan(position);
+                }
+            });
+        } else {
+            mLayout.setSpanLookup(null);
+        }
+        mLayout.reset(mAdapter.itemCount());
         
         mHeader = mAdapter.getHeader();
+        mFooter = mAdapter.getFooter();
+        attachCells();
+    }
+
+    /**
+     * 現在の並び順で ChildView を作り直す
+     */
+    private void attachCells() {
+        this.removeAllViews();
+        mRecycledViews.clear();
+        mLayout.clearCells();
+        mFirstBoundIndex = 0;
+        mLastBoundIndex = -1;
+        
+        if (!mVirtualized && mCellRenderer == null)
+            this.addChildView();
+        
         if (mHeader != null)
             addView(mHeader);
         
-        mFooter = mAdapter.getFooter();
         if (mFooter != null)
             addView(mFooter);
     }
 
     private void addChildView() {
-        int count = mAdapter.itemCount();
+        int count = mLayout.getItemCount();
         for (int index = 0; index < count; index++) {
-            View childView = mAdapter.getView(index);
+            View childView = mAdapter.getView(mLayout.positionAt(index), null);
+            if (childView == null)
+                continue;
             addView(childView);
+            setElementIndex(childView, index);
+        }
+    }
+
+    /**
+     * 表示範囲のセルを生成し、範囲外のセルを再利用プールに戻す
+     * 
+     * @param force 範囲が変わっていなくても生成済みセルを確認し直す
+     */
+    private void fillVisibleWindow(boolean force) {
+        int count = mLayout.getItemCount();
+        int rowHeight = mLayout.getRowHeight();
+        if (count == 0 || rowHeight <= 0)
+            return;
+        
+        if (!getLocalVisibleRect(mVisibleRect))
+            mVisibleRect.set(0, 0, getWidth(), getResources().getDisplayMetrics().heightPixels);
+        
+        int rows = mLayout.getItemRowCount();
+        int firstRow = (mVisibleRect.top - mLayout.getTop()) / rowHeight - mOverscanRowCount;
+        int lastRow = (mVisibleRect.bottom - mLayout.getTop()) / rowHeight + mOverscanRowCount;
+        firstRow = Math.max(0, firstRow);
+        lastRow = Math.min(rows - 1, lastRow);
+        
+        int first = mLayout.firstIndexFromRow(firstRow);
+        int last = mLayout.lastIndexToRow(lastRow);
+        if (!force && first == mFirstBoundIndex && last == mLastBoundIndex)
+            return;
+        
+        if (mCellRenderer != null) {
+            // 描画する範囲だけを更新する
+            mFirstBoundIndex = first;
+            mLastBoundIndex = last;
+            invalidate();
+            return;
+        }
+        
+        for (int index = mFirstBoundIndex; index <= mLastBoundIndex; index++) {
+            if (index < first || index > last)
+                recycleCell(index);
+        }
+        for (int index = first; index <= last; index++) {
+            if (mLayout.cellAt(index) == null)
+                bindCell(index);
+        }
+        mFirstBoundIndex = first;
+        mLastBoundIndex = last;
+        invalidate();
+    }
+
+    private void bindCell(int index) {
+        int last = mRecycledViews.size() - 1;
+        View convertView = last >= 0 ? mRecycledViews.remove(last) : null;
+        View child = mAdapter.getView(mLayout.positionAt(index), convertView);
+        if (child == null)
+            return;
+        
+        addCellInLayout(child, index);
+    }
+
+    /**
+     * requestLayout せずにセルを追加し、その場で measure/layout する
+     */
+    private void addCellInLayout(View child, int index) {
+        LayoutParams params = child.getLayoutParams();
+        if (params == null)
+            params = generateDefaultLayoutParams();
+        addViewInLayout(child, -1, params, true);
+        setElementIndex(child, index);
+        if (mSelectionMode)
+            child.setSelected(mGroupDrag.isSelected(mLayout.positionAt(index)));
+        if (mGroupDrag.isHidden(index))
+            child.setVisibility(View.INVISIBLE);
+        
+        if (mFixedCellSize && mCellWidthSpec != 0)
+            measureFixedSizeCell(child, index);
+        else if (mLayout.hasSpans())
+            measureCellExactly(child, mLayout.slotWidth(index), mLayout.slotHeight(index));
+        else
+            child.measure(MeasureSpec.makeMeasureSpec(mLastWidthSize, MeasureSpec.AT_MOST), MeasureSpec.UNSPECIFIED);
+        int left = mLayout.slotLeft(index);
+        int top = mLayout.slotTop(index);
+        child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+        
+        if (mDraggingView != null)
+            ((DragAndDropElement) child).onDragStartPreceding(mDraggingView);
+    }
+
+    private void recycleCell(int index) {
+        View child = mLayout.cellAt(index);
+        if (child == null || child == mDraggingView)
+            return;
+        
+        animationCancel(child);
+        resetTranslation(child);
+        if (mDraggingView != null)
+            ((DragAndDropElement) child).onDragEnded(mDraggingView);
+        
+        removeViewInLayout(child);
+        mLayout.setCell(index, null);
+        if (mGroupDrag.isHidden(index))
+            child.setVisibility(View.VISIBLE);
+        mRecycledViews.add(child);
+    }
+
+    /**
+     * 範囲内のセルを新しい位置へアニメーションさせる
+     * 
+     * ドラッグ中は DragAndDropElement#setIndex をドロップまで遅らせる
+     */
+    private void shiftCells(int fromIndex, int toIndex) {
+        if (mCellRenderer != null)
+            invalidate();
+        for (int index = fromIndex; index <= toIndex; index++) {
+            View v = mLayout.cellAt(index);
+            if (v == null)
+                continue;
+            
+            if (v == mDraggingView) {
+                mDraggingIndex = index;
+                continue;
+            }
+            if (mDraggingView == null)
+                ((DragAndDropElement) v).setIndex(index);
+            transferAnimation(v, mLayout.slotLeft(index), mLayout.slotTop(index));
+        }
+    }
+
+    /**
+     * ドラッグ中に遅らせていた index をセルに反映する
+     */
+    private void commitElementIndexes() {
+        int count = mLayout.getItemCount();
+        for (int index = 0; index < count; index++) {
+            View v = mLayout.cellAt(index);
+            if (v != null && ((DragAndDropElement) v).getIndex() != index)
+                ((DragAndDropElement) v).setIndex(index);
+        }
+    }
+
+    /**
+     * 変更後の後始末 (空いた index のセル生成、行数変化時の再レイアウト)
+     */
+    private void onCellsChanged(int rowCountBefore, int emptyFrom, int emptyTo) {
+        if (mDraggingView != null)
+            mLastOverlapIndex = mDraggingIndex;
+        
+        if (mVirtualized || mCellRenderer != null) {
+            mLastBoundIndex = Math.min(mLastBoundIndex, mLayout.getItemCount() - 1);
+            fillVisibleWindow(true);
+        } else {
+            for (int index = emptyFrom; index <= emptyTo; index++) {
+                if (mLayout.cellAt(index) == null) {
+                    View child = mAdapter.getView(mLayout.positionAt(index), null);
+                    if (child != null)
+                        addCellInLayout(child, index);
+                }
+            }
+        }
+        
+        // まだ一度も measure されていない場合も含めて、行数が変わった時だけ再レイアウトする
+        if (mLayout.getRowHeight() <= 0 || rowCountBefore != mLayout.getItemRowCount())
+            requestLayout();
+        invalidate();
+    }
+
+    /**
+     * 生成済みセルの範囲を広げる (移動したセルを再利用の対象に含めるため)
+     */
+    private void expandBoundRange(int from, int to) {
+        if (mLastBoundIndex < mFirstBoundIndex)
+            return;
+        mFirstBoundIndex = Math.max(0, Math.min(mFirstBoundIndex, from));
+        mLastBoundIndex = Math.max(mLastBoundIndex, to);
+    }
+
+    private void removeCell(View child) {
+        animationCancel(child);
+        resetTranslation(child);
+        removeViewInLayout(child);
+        if (child == mDraggingView) {
+            if (mDragOverlay.isShowing()) {
+                mDragOverlay.hide();
+                child.setVisibility(View.VISIBLE);
+            }
+            mDraggingView = null;
+            mDraggingIndex = -1;
+            mLastOverlapIndex = -1;
+            // ドラッグ中のセルが削除されたので、ACTION_DRAG_ENDED を待たずにここで終える
+            endDrag(child);
+        } else if (mVirtualized) {
+            mRecycledViews.add(child);
+        }
+    }
+
+    /**
+     * position が変わる前に、選択とまとめてドラッグ中の状態を解除する
+     * 
+     * 隠していたセルは末尾に置いたまま表示し、以降は1つのセルのドラッグとして続ける
+     */
+    private void onStructureChanged() {
+        clearSelection();
+        if (!mGroupDrag.isDragging())
+            return;
+        int count = mLayout.getItemCount();
+        for (int index = mGroupDrag.getHiddenFrom(); index < count; index++) {
+            View cell = mLayout.cellAt(index);
+            if (cell != null)
+                cell.setVisibility(View.VISIBLE);
+        }
+        mGroupDrag.cancel();
+        // 重ねて描いていた画像を1つのセルの画像にする
+        if (mDraggingView != null)
+            mDragOverlay.recapture(mDraggingView, 1);
+        invalidate();
+    }
+
+    private class AdapterObserver implements DragDropGridAdapter.Observer {
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            if (itemCount <= 0)
+                return;
+            onStructureChanged();
+            int rowCountBefore = mLayout.getItemRowCount();
+            int start = mLayout.insertPositions(positionStart, itemCount);
+            if (mDraggingView != null && start <= mDragStartIndex)
+                mDragStartIndex += itemCount;
+            
+            expandBoundRange(mFirstBoundIndex, mLastBoundIndex + itemCount);
+            shiftCells(start + itemCount, mLayout.getItemCount() - 1);
+            onCellsChanged(rowCountBefore, start, start + itemCount - 1);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            if (itemCount <= 0)
+                return;
+            onStructureChanged();
+            int rowCountBefore = mLayout.getItemRowCount();
+            int positionEnd = positionStart + itemCount;
+            View dragging = mDraggingView;
+            int removedBeforeStart = 0;
+            for (int index = 0; index < mLayout.getItemCount(); index++) {
+                int position = mLayout.positionAt(index);
+                if (position < positionStart || position >= positionEnd)
+                    continue;
+                if (index < mDragStartIndex)
+                    removedBeforeStart++;
+                View child = mLayout.cellAt(index);
+                if (child != null)
+                    removeCell(child);
+            }
+            mDragStartIndex -= removedBeforeStart;
+            int firstRemoved = mLayout.removePositions(positionStart, itemCount);
+            if (firstRemoved == -1)
+                return;
+            
+            expandBoundRange(mFirstBoundIndex - itemCount, mLastBoundIndex);
+            shiftCells(firstRemoved, mLayout.getItemCount() - 1);
+            // ドラッグ中のセルが削除された場合は、遅らせていた index をここで反映する
+            if (dragging != null && mDraggingView == null)
+                commitElementIndexes();
+            onCellsChanged(rowCountBefore, 0, -1);
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            if (fromPosition == toPosition)
+                return;
+            int fromIndex = mLayout.indexOfPosition(fromPosition);
+            int toIndex = mLayout.indexOfPosition(toPosition);
+            if (fromIndex >= mLayout.getItemCount() || toIndex >= mLayout.getItemCount())
+                return;
+            
+            onStructureChanged();
+            int rowCountBefore = mLayout.getItemRowCount();
+            mLayout.remapMovedPosition(fromPosition, toPosition);
+            int end = mLayout.move(fromIndex, toIndex);
+            if (mDraggingView != null) {
+                if (mDragStartIndex == fromIndex)
+                    mDragStartIndex = toIndex;
+                else if (fromIndex < mDragStartIndex && mDragStartIndex <= toIndex)
+                    mDragStartIndex--;
+                else if (toIndex <= mDragStartIndex && mDragStartIndex < fromIndex)
+                    mDragStartIndex++;
+            }
+            
+            expandBoundRange(Math.min(fromIndex, toIndex), end);
+            shiftCells(Math.min(fromIndex, toIndex), end);
+            onCellsChanged(rowCountBefore, 0, -1);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            int positionEnd = positionStart + itemCount;
+            boolean redraw = false;
+            for (int index = 0; index < mLayout.getItemCount(); index++) {
+                int position = mLayout.positionAt(index);
+                if (position < positionStart || position >= positionEnd)
+                    continue;
+                // renderer で描いているセルは View が無いので描き直すだけ
+                if (mCellRenderer != null && mFirstBoundIndex <= index && index <= mLastBoundIndex)
+                    redraw = true;
+                View child = mLayout.cellAt(index);
+                if (child == null)
+                    continue;
+                // ドラッグ中のセルを差し替えるとドラッグが途切れるので、ドロップまで遅らせる
+                if (child == mDraggingView) {
+                    mRebindDraggingView = true;
+                    continue;
+                }
+                rebindCell(index);
+            }
+            
+            if (mLayout.hasSpans()) {
+                // 大きさが変わったかもしれないので置き直す
+                int rowCountBefore = mLayout.getItemRowCount();
+                mLayout.invalidateSpans();
+                shiftCells(0, mLayout.getItemCount() - 1);
+                onCellsChanged(rowCountBefore, 0, -1);
+                requestLayout();
+            } else if (redraw) {
+                invalidate();
+            }
         }
+
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mPendingOrder != null)
+            applyPendingOrder();
+        
+        if (mVirtualized || mCellRenderer != null)
+            fillVisibleWindow(false);
+        
         if (mDraggingView == null) {
-            for (int index = 0; index < getChildCount(); index++)
-                layoutAChild(index);
+            int columns = mLayout.getColumnCount();
+            boolean animate = mAnimateColumnChanges && mLaidOutColumnCount != 0 && mLaidOutColumnCount != columns;
+            for (int index = 0; index < getChildCount(); index++) {
+                if (animate)
+                    animateAChild(index);
+                else
+                    layoutAChild(index);
+            }
+            mLaidOutColumnCount = columns;
         }
         
         if (mHeader != null)
-            mHeader.layout(0, 0, getWidth(), mAdapter.getHeaderViewHeight());
+            mHeader.layout(0, 0, getWidth(), mMetrics.getHeaderViewHeight());
         
         if (mFooter != null) {
-            int footerY = mAdapter.rowCount() * mAdapter.getChildViewHeight() + mAdapter.getHeaderViewHeight();
-            mFooter.layout(0, footerY, getWidth(), footerY+mAdapter.getFooterViewHeight());
+            int footerY = mLayout.getRowCount() * mLayout.getRowHeight() + mMetrics.getHeaderViewHeight();
+            mFooter.layout(0, footerY, getWidth(), footerY + mMetrics.getFooterViewHeight());
         }
             
     }
 
+    /**
+     * 現在の位置で新しい大きさにしてから、新しい位置へアニメーションさせる
+     */
+    private void animateAChild(int index) {
+        View child = getChildAt(index);
+        if (child instanceof DragAndDropElement) {
+            int slot = ((DragAndDropElement) child).getIndex();
+            int left = child.getLeft();
+            int top = child.getTop();
+            child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+            transferAnimation(child, mLayout.slotLeft(slot), mLayout.slotTop(slot));
+        }
+    }
+
     private void layoutAChild(int index) {
         int position = index;
         View child = getChildAt(position);
         if (child instanceof DragAndDropElement) {
             DragAndDropElement element = (DragAndDropElement) child;
-            Point p = pointWithIndex(element.getIndex(), child);
 
-            int left = p.x;
-            int top  = p.y;
+            int left = mLayout.slotLeft(element.getIndex());
+            int top  = mLayout.slotTop(element.getIndex());
             
             child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
         }
     }
 
-    private Point pointWithIndex(int index, View childView) {
-        int marginTop = mAdapter.getHeaderViewHeight();
-        int col = index % mAdapter.columnCount();
-        int row = index / mAdapter.columnCount();
-        int x = (col * columnWidthSize);
-        int y = (row * rowHeightSize) + marginTop;
-        return new Point(x, y);
-    }
-
     private int indexWithPoint(int x, int y) {
-        int childViewCount = getDragAndDropElementCount();
-        for (int i = 0; i < childViewCount; i++) {
-            int marginTop = mAdapter.getHeaderViewHeight();
-            int col = i % mAdapter.columnCount();
-            int row = i / mAdapter.columnCount();
-            int left = (col * columnWidthSize);
-            int right = left + columnWidthSize;
-            int top = (row * rowHeightSize) + marginTop;
-            int bottom = top + rowHeightSize;
-            Rect r = new Rect(left, top, right, bottom);
-            if (r.contains(x, y)) {
-                return i;
-            }
-        }
-        return -1;
+        return mLayout.indexAt(x, y);
     }
     
     public int getDragAndDropElementCount() {
-        int count = getChildCount();
-        if (mFooter != null) count--;
-        if (mHeader != null) count--;
-        return count;
+        return mLayout.getItemCount();
     }
 
     private View viewWithIndex(int index) {
-        for (View v : getChildViews()) {
-            if (v instanceof DragAndDropElement && index == ((DragAndDropElement) v).getIndex())
-                return v;
+        return mLayout.cellAt(index);
+    }
+
+    /**
+     * セルを Adapter から取り直す (別の View が返された場合は差し替える)
+     */
+    private void rebindCell(int index) {
+        View child = mLayout.cellAt(index);
+        View rebound = mAdapter.getView(mLayout.positionAt(index), child);
+        if (rebound == null || rebound == child) {
+            // index は変わらないので、ドラッグ中でも setIndex は呼ばずに表だけ更新する
+            if (rebound == child)
+                mLayout.setCell(index, child);
+            return;
         }
-        return null;
+        removeCell(child);
+        mLayout.setCell(index, null);
+        addCellInLayout(rebound, index);
+    }
+
+    /**
+     * index を更新し、テーブルにも反映する
+     */
+    private void setElementIndex(View v, int index) {
+        ((DragAndDropElement) v).setIndex(index);
+        mLayout.setCell(index, v);
+        if (v == mDraggingView)
+            mDraggingIndex = index;
     }
 
     @Override
@@ -304,63 +1380,185 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         int heightSize = MeasureSpec.getSize(heightMeasureSpec);
 
-        WindowManager wm = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
-        Display display = wm.getDefaultDisplay();
+        // Adapter の寸法はこの measure 中はキャッシュを使う
+        mMetrics.readAdapter(mAdapter);
 
-        widthSize = acknowledgeWidthSize(widthMode, widthSize, display);
+        widthSize = acknowledgeWidthSize(widthMode, widthSize);
+        mLastWidthSize = widthSize;
         // heightSize = acknowledgeHeightSize(heightMode, heightSize, display);
-        heightSize = mAdapter.getChildViewHeight() * mAdapter.rowCount();
-
-        adaptChildrenMeasuresToViewSize(widthSize, heightSize);
+        int columnCount = mLayout.resolveColumnCount(widthSize, mMetrics.getColumnCount(),
+                mMetrics.getChildViewWidth());
+        int rowCount = mLayout.resolveRowCount(mMetrics.getRowCount(), columnCount);
+        heightSize = mMetrics.getChildViewHeight() * rowCount;
+        mLayout.measure(widthSize, heightSize, columnCount, rowCount, mMetrics.getHeaderViewHeight());
+
+        if (mFixedCellSize)
+            measureFixedSizeCells(widthSize);
+        else
+            adaptChildrenMeasuresToViewSize(widthSize, heightSize);
         // searchBiggestChildMeasures();
-        computeGridMatrixSize(widthSize, heightSize);
-        computeColumnsAndRowsSizes(widthSize, heightSize);
 
-        if (heightSize < mAdapter.getViewHeight())
-            heightSize = mAdapter.getViewHeight();
+        if (heightSize < mMetrics.getViewHeight())
+            heightSize = mMetrics.getViewHeight();
+        
+        if (mScrollingEnabled) {
+            // コンテンツ全体ではなく、親から渡された大きさを表示範囲にする
+            mContentHeight = mMetrics.getHeaderViewHeight() + heightSize + mMetrics.getFooterViewHeight();
+            heightSize = resolveSize(mContentHeight, heightMeasureSpec);
+        }
         
         setMeasuredDimension(widthSize, heightSize);
     }
 
-    private void computeColumnsAndRowsSizes(int widthSize, int heightSize) {
-        columnWidthSize = widthSize / computedColumnCount;
-        rowHeightSize = heightSize / computedRowCount;
+    /**
+     * グリッド自身でコンテンツをスクロールする (既定は無効)
+     * 
+     * 有効にすると、ScrollView に入れずに表示範囲の大きさで measure し、
+     * 指での移動と fling でスクロールする。表示範囲外のセルを生成しない場合は
+     * setVirtualizationEnabled と合わせて使う。
+     */
+    public void setScrollingEnabled(boolean enabled) {
+        if (mScrollingEnabled == enabled)
+            return;
+        mScrollingEnabled = enabled;
+        mViewportScroller.abort();
+        if (!enabled)
+            super.scrollTo(getScrollX(), 0);
+        requestLayout();
+    }
+
+    public boolean isScrollingEnabled() {
+        return mScrollingEnabled;
+    }
+
+    private int getMaxScrollY() {
+        return Math.max(0, mContentHeight - getHeight());
+    }
+
+    @Override
+    public void scrollTo(int x, int y) {
+        if (mScrollingEnabled)
+            y = Math.max(0, Math.min(y, getMaxScrollY()));
+        super.scrollTo(x, y);
+    }
+
+    @Override
+    public void computeScroll() {
+        mViewportScroller.computeScroll();
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return mScrollingEnabled ? mContentHeight : super.computeVerticalScrollRange();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mScrollingEnabled && mDraggingView == null && mViewportScroller.onTouchEvent(event))
+            return true;
+        return super.onTouchEvent(event);
+    }
+
+    private int acknowledgeWidthSize(int widthMode, int widthSize) {
+        if (widthMode == MeasureSpec.UNSPECIFIED) {
+            widthSize = mMetrics.getDisplayWidth();
+        }
+        return widthSize;
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        mMetrics.invalidateDisplay();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mMetrics.invalidateDisplay();
+        // 表示範囲が広がってスクロールできる量が減った場合に戻す
+        if (mScrollingEnabled)
+            scrollTo(getScrollX(), getScrollY());
     }
 
-    private int getItemViewCount() {
-        return getChildCount();
+    /**
+     * セルの幅 (measure 後に確定する)
+     */
+    public int getCellWidth() {
+        return mLayout.getColumnWidth();
+    }
+
+    /**
+     * セルの高さ (measure 後に確定する)
+     */
+    public int getCellHeight() {
+        return mLayout.getRowHeight();
     }
 
-    private void computeGridMatrixSize(int widthSize, int heightSize) {
-        if (mAdapter.columnCount() != -1 && mAdapter.rowCount() != -1) {
-            computedColumnCount = mAdapter.columnCount();
-            computedRowCount = mAdapter.rowCount();
-        } else {
-            // if (biggestChildWidth > 0 && biggestChildHeight > 0) {
-            // computedColumnCount = widthSize / biggestChildWidth;
-            // computedRowCount = heightSize / biggestChildHeight;
-            // }
+    private void adaptChildrenMeasuresToViewSize(int widthSize, int heightSize) {
+        int widthSpec = MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.AT_MOST);
+        if (!mLayout.hasSpans()) {
+            measureChildren(widthSpec, MeasureSpec.UNSPECIFIED);
+            return;
         }
-
-        if (computedColumnCount == 0) {
-            computedColumnCount = 1;
+        
+        // 複数マスのセルがある場合は、セルをマスの大きさに合わせる (LayoutParams の大きさは使わない)
+        if (mHeader != null && mHeader.getVisibility() != GONE)
+            measureChild(mHeader, widthSpec, MeasureSpec.UNSPECIFIED);
+        if (mFooter != null && mFooter.getVisibility() != GONE)
+            measureChild(mFooter, widthSpec, MeasureSpec.UNSPECIFIED);
+        int count = mLayout.getItemCount();
+        for (int index = 0; index < count; index++) {
+            View child = mLayout.cellAt(index);
+            if (child != null && child.getVisibility() != GONE)
+                measureCellExactly(child, mLayout.slotWidth(index), mLayout.slotHeight(index));
         }
+    }
 
-        if (computedRowCount == 0) {
-            computedRowCount = 1;
+    /**
+     * 大きさが変わったセルと requestLayout されたセルだけを measure する
+     */
+    private void measureFixedSizeCells(int widthSize) {
+        // 列数が AUTOMATIC の場合は列の幅に合わせる
+        int cellWidth = mMetrics.getColumnCount() == DragDropGridAdapter.AUTOMATIC
+            ? mLayout.getColumnWidth() : mMetrics.getChildViewWidth();
+        int widthSpec = MeasureSpec.makeMeasureSpec(cellWidth, MeasureSpec.EXACTLY);
+        int heightSpec = MeasureSpec.makeMeasureSpec(mMetrics.getChildViewHeight(), MeasureSpec.EXACTLY);
+        mCellWidthSpec = widthSpec;
+        mCellHeightSpec = heightSpec;
+        
+        int headerFooterWidthSpec = MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.AT_MOST);
+        if (mHeader != null && mHeader.getVisibility() != GONE)
+            measureChild(mHeader, headerFooterWidthSpec, MeasureSpec.UNSPECIFIED);
+        if (mFooter != null && mFooter.getVisibility() != GONE)
+            measureChild(mFooter, headerFooterWidthSpec, MeasureSpec.UNSPECIFIED);
+        
+        // セルは index から大きさ (マス数) が決まるため並び順の表から辿る
+        int count = mLayout.getItemCount();
+        for (int index = 0; index < count; index++) {
+            View child = mLayout.cellAt(index);
+            if (child != null && child.getVisibility() != GONE)
+                measureFixedSizeCell(child, index);
         }
     }
 
-    @SuppressWarnings("deprecation")
-    private int acknowledgeWidthSize(int widthMode, int widthSize, Display display) {
-        if (widthMode == MeasureSpec.UNSPECIFIED) {
-            widthSize = display.getWidth();
-        }
-        return widthSize;
+    /**
+     * セルの大きさ (1マスの大きさ * マス数) で measure する
+     */
+    private void measureFixedSizeCell(View child, int index) {
+        int width = MeasureSpec.getSize(mCellWidthSpec) * mLayout.columnSpanOf(index);
+        int height = MeasureSpec.getSize(mCellHeightSpec) * mLayout.rowSpanOf(index);
+        measureCellExactly(child, width, height);
     }
 
-    private void adaptChildrenMeasuresToViewSize(int widthSize, int heightSize) {
-        measureChildren(MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.AT_MOST), MeasureSpec.UNSPECIFIED);
+    /**
+     * 大きさが変わらず requestLayout もされていなければ measure しない
+     */
+    private void measureCellExactly(View child, int width, int height) {
+        if (!child.isLayoutRequested() && child.getMeasuredWidth() == width && child.getMeasuredHeight() == height)
+            return;
+        child.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+            MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
     }
 
     @Override
@@ -373,14 +1571,16 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
             touchDown(ev);
             break;
         }
+        if (mScrollingEnabled && mDraggingView == null)
+            return mViewportScroller.onTouchEvent(ev);
         return false;
     }
 
     @Override
     public boolean onTouch(View v, MotionEvent event) {
 
-        mLastTouchX = (int) event.getX();
-        mLastTouchY = (int) event.getY();
+        mLastTouchX = (int) event.getX() + getScrollX();
+        mLastTouchY = (int) event.getY() + getScrollY();
 
         int action = event.getAction();
         switch (action & MotionEvent.ACTION_MASK) {
@@ -396,47 +1596,32 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
     }
 
     private void touchDown(MotionEvent event) {
-        initialX = (int) event.getRawX();
-        initialY = (int) event.getRawY();
+        // MotionEvent はこの View の座標系なので、スクロール量を足してグリッド座標にする
+        initialX = (int) event.getX() + getScrollX();
+        initialY = (int) event.getY() + getScrollY();
     }
 
+    /**
+     * タッチ開始位置にあるセルの index を返す
+     */
     private int positionForView(View v) {
-        for (int index = 0; index < getItemViewCount(); index++) {
-            View child = getChildView(index);
-            if (isPointInsideView(initialX, initialY, child)) {
-                return index;
-            }
-        }
-        return -1;
-    }
-
-    private View getChildView(int index) {
-        return getChildAt(index);
-    }
-
-    private boolean isPointInsideView(float x, float y, View view) {
-        int location[] = new int[2];
-        view.getLocationOnScreen(location);
-        int viewX = location[0];
-        int viewY = location[1];
-
-        if (pointIsInsideViewBounds(x, y, view, viewX, viewY)) {
-            return true;
-        } else {
-            return false;
-        }
-    }
-
-    private boolean pointIsInsideViewBounds(float x, float y, View view, int viewX, int viewY) {
-        return (x > viewX && x < (viewX + view.getWidth())) && (y > viewY && y < (viewY + view.getHeight()));
+        return indexWithPoint(initialX, initialY);
     }
 
     @Override
     public boolean onLongClick(View v) {
         int index = positionForView(v);
-        View view = getChildAt(index);
+        View view = viewWithIndex(index);
+        if (view == null && mCellRenderer != null && index != -1) {
+            // 描画だけしていたセルを View にしてドラッグする
+            bindCell(index);
+            view = viewWithIndex(index);
+        }
         if (view != null && view instanceof DragAndDropElement) {
-            startDrag(view);
+            if (mSelectionMode && mGroupDrag.getSelectedCount() > 1 && isItemSelected(index))
+                startGroupDrag(view, index);
+            else
+                startDrag(view);
         }
         return false;
     }
@@ -444,28 +1629,218 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
     @Override
     public void onClick(View v) {
         int index = positionForView(v);
-        View view = getChildAt(index);
+        if (mSelectionMode && index != -1 && mDraggingView == null) {
+            setItemSelected(index, !isItemSelected(index));
+            return;
+        }
+        View view = viewWithIndex(index);
         if (mDragSource != null && view instanceof DragAndDropElement) {
             mDragSource.onClickDragAndDropElement((DragAndDropElement) view);
         }
     }
 
     private void startDrag(View v) {
+        beginDrag(v);
+
+        if (mDragSource != null) {
+            mDragSource.onDragStartPreced();
+        }
+
+        ClipData data = ClipData.newPlainText("text", "text : " + v.toString());
+        mDraggingView.startDrag(data, new TabDragShadowBuilder(mDraggingView), new DragTransfer(this), 0);
+    }
+
+    /**
+     * ドラッグ中の状態にする (システムのドラッグは開始しない)
+     */
+    void beginDrag(View v) {
+        // ドロップ後のアニメーションが残っていれば終わらせておく
+        mCellAnimator.end(v);
         mDraggingView = v;
-        mDraggingView.bringToFront();
+        mDraggingIndex = ((DragAndDropElement) v).getIndex();
+        mDragStartIndex = mDraggingIndex;
+        mLastOverlapIndex = mDraggingIndex;
+        mRebindDraggingView = false;
+        mDropTargetFilter.reset();
+        if (mSessionRecorder != null)
+            mSessionRecorder.start(mMetrics.getFrameIntervalNanos(), mCellAnimator);
+        if (mDragMode == DRAG_MODE_OVERLAY || mGroupDrag.isDragging()) {
+            // 子 View の並びは変えず、画像を上に描く (まとめてドラッグする場合は重ねて描く)
+            mDragOverlay.capture(v, Math.max(1, mGroupDrag.getGroupSize()));
+            if (mDragOverlay.isShowing())
+                v.setVisibility(View.INVISIBLE);
+        } else {
+            mDraggingView.bringToFront();
+        }
 
         for (View cv : getChildViews()) {
             if (cv instanceof DragAndDropElement) {
                 ((DragAndDropElement) cv).onDragStartPreceding(mDraggingView);
             }
         }
+    }
 
-        if (mDragSource != null) {
+    /**
+     * 他のグリッドでドラッグ中のセルをこのグリッドへ移し、以降のドラッグを引き継ぐ
+     * 
+     * @return 引き継いだ場合は true
+     */
+    private boolean acceptTransfer(DragTransfer transfer, int x, int y) {
+        DragDropGrid source = transfer.getOwner();
+        if (mTransferListener == null || !transfer.canTransferTo(this) || source.mDraggingView == null
+                || source.mGroupDrag.isDragging())
+            return false;
+        
+        int toIndex = indexWithPoint(x, y);
+        if (toIndex == -1)
+            toIndex = mLayout.getItemCount();
+        int sourcePosition = source.mLayout.positionAt(source.mDraggingIndex);
+        
+        // Adapter の通知で source は隙間を閉じ、このグリッドは隙間を開ける
+        int position = mTransferListener.onTransfer(source, sourcePosition, toIndex);
+        View v = position != -1 ? transferredCell(position) : null;
+        if (v == null) {
+            // 同じドラッグの間は問い合わせ直さない
+            // (source が通知でセルを取り除いていた場合、source のドラッグはそこで終わっている)
+            transfer.refuse(this);
+            return false;
+        }
+        
+        mLastTouchPoint = source.mLastTouchPoint;
+        beginDrag(v);
+        if (mDragSource != null)
             mDragSource.onDragStartPreced();
+        toIndex = Math.min(toIndex, mLayout.getItemCount() - 1);
+        if (toIndex != mDraggingIndex)
+            transferChildView(toIndex);
+        mLastOverlapIndex = mDraggingIndex;
+        // 引き継いでから source のドラッグを終える
+        source.releaseDrag();
+        transfer.moveTo(this);
+        return true;
+    }
+
+    /**
+     * 他のグリッドから移された position のセル
+     * 
+     * @return セル, 見つからない場合は null
+     */
+    private View transferredCell(int position) {
+        int index = mLayout.indexOfPosition(position);
+        if (index >= mLayout.getItemCount())
+            return null;
+        
+        View v = viewWithIndex(index);
+        if (v == null) {
+            bindCell(index);
+            v = viewWithIndex(index);
         }
+        return v instanceof DragAndDropElement ? v : null;
+    }
 
-        ClipData data = ClipData.newPlainText("text", "text : " + v.toString());
-        mDraggingView.startDrag(data, new TabDragShadowBuilder(mDraggingView), (Object) mDraggingView, 0);
+    /**
+     * 他のグリッドへ移したセルのドラッグを終える
+     * 
+     * セルは通常 Adapter の削除通知で取り除かれ、その時点でドラッグも終えている
+     */
+    private void releaseDrag() {
+        View released = mDraggingView;
+        if (released == null)
+            return;
+        // Adapter から取り除かれなかった場合は元の位置に戻す
+        dropDragOverlay();
+        commitElementIndexes();
+        returnDraggingViewPosition(null);
+        mDraggingView = null;
+        rebindDroppedCell();
+        mDraggingIndex = -1;
+        endDrag(released);
+    }
+
+    /**
+     * ドラッグ位置の処理を止めて、セルと DragSource にドラッグの終わりを通知する
+     */
+    private void endDrag(View released) {
+        mDragLocationTicker.cancel();
+        mDragLocationPending = false;
+        removeCallbacks(mDwellRunnable);
+        mAutoScroller.stop();
+        mScrollParent = null;
+        mRebindDraggingView = false;
+        for (View cv : getChildViews()) {
+            if (cv instanceof DragAndDropElement)
+                ((DragAndDropElement) cv).onDragEnded(released);
+        }
+        if (mDragSource != null)
+            mDragSource.onDragEnded();
+    }
+
+    /**
+     * ドラッグ中に遅らせていた変更通知をドロップしたセルに反映する
+     */
+    private void rebindDroppedCell() {
+        if (!mRebindDraggingView)
+            return;
+        mRebindDraggingView = false;
+        if (mDraggingIndex != -1 && mLayout.cellAt(mDraggingIndex) != null) {
+            rebindCell(mDraggingIndex);
+            requestLayout();
+        }
+    }
+
+    /**
+     * 選択中のセルをまとめてドラッグする
+     * 
+     * ドラッグするセル以外は並び順の末尾へ移して隠し、残りのセルを1回でつめる。
+     * ドラッグ中はドラッグするセルだけを通常どおり並び替え、ドロップ時に隠したセルを
+     * その前後へまとめて挿入する。
+     */
+    private void startGroupDrag(View v, int index) {
+        int[] newOrder = mGroupDrag.start(mLayout.copyOrder(), index);
+        
+        // 並び替えたセルがドラッグ開始前に再利用されないようにする
+        mDraggingView = v;
+        mLayout.setOrder(newOrder);
+        int count = mLayout.getItemCount();
+        for (int i = mGroupDrag.getHiddenFrom(); i < count; i++) {
+            View cell = mLayout.cellAt(i);
+            if (cell != null)
+                cell.setVisibility(View.INVISIBLE);
+        }
+        placeCells(true);
+        startDrag(v);
+    }
+
+    /**
+     * 隠していたセルをドラッグ中のセルの前後へ戻し、つめていたセルを1回で動かす
+     */
+    private void dropDragGroup() {
+        int[] fromIndexes = mGroupDrag.getStartIndexes();
+        int hiddenFrom = mGroupDrag.getHiddenFrom();
+        int count = mLayout.getItemCount();
+        int toIndex = mDraggingIndex;
+        int[] newOrder = mLayout.copyOrder();
+        mDraggingIndex = mGroupDrag.drop(newOrder, toIndex);
+        
+        // 隠していたセルはドロップした位置から広げる
+        dropDragOverlay();
+        int left = mDraggingView.getLeft();
+        int top = mDraggingView.getTop();
+        for (int i = hiddenFrom; i < count; i++) {
+            View cell = mLayout.cellAt(i);
+            if (cell == null)
+                continue;
+            animationCancel(cell);
+            resetTranslation(cell);
+            cell.layout(left, top, left + cell.getWidth(), top + cell.getHeight());
+            cell.setVisibility(View.VISIBLE);
+        }
+        // ドラッグ中に遅らせていた index は、挿入後の位置へ動かす時に1回だけ反映する
+        mLayout.setOrder(newOrder);
+        placeCells(true);
+        
+        if (mGroupReorderListener != null)
+            mGroupReorderListener.onGroupReorder(fromIndexes, toIndex);
     }
 
     public List<View> getChildViews() {
@@ -479,84 +1854,278 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
     @Override
     public boolean onDrag(View v, DragEvent event) {
         final int action = event.getAction();
+        // DragEvent の座標はこの View の座標系なので、スクロール量を足してグリッド座標にする
+        final int x = (int) event.getX() + getScrollX();
+        final int y = (int) event.getY() + getScrollY();
         switch (action) {
 
         case DragEvent.ACTION_DRAG_STARTED:
-            Log.d(LOG_TAG, ">>> START DRAG <<<");
+            if (DEBUG) Log.d(LOG_TAG, ">>> START DRAG <<<");
+            trace(TRACE_DRAG_STARTED, mLastOverlapIndex, x, y);
             break;
 
         case DragEvent.ACTION_DRAG_ENTERED:
-            Log.d(LOG_TAG, ">>> ACTION_DRAG_ENTERED <<<");
+            if (DEBUG) Log.d(LOG_TAG, ">>> ACTION_DRAG_ENTERED <<<");
+            trace(TRACE_DRAG_ENTERED, mLastOverlapIndex, x, y);
             break;
 
         case DragEvent.ACTION_DRAG_LOCATION:
+            if (mDraggingView == null && event.getLocalState() instanceof DragTransfer)
+                acceptTransfer((DragTransfer) event.getLocalState(), x, y);
             if (mDraggingView != null) {
-                
-                final int x = (int) event.getX();
-                final int y = (int) event.getY();
-
-                int index = indexWithPoint(x, y);
-                
-                if (index != -1) {
-                    if (mLastOverlapIndex == index) {
-                        onDragOver(index);
-                    } else {
-                        if (mLastOverlapIndex != -1) {
-                            onDragExit(mLastOverlapIndex);
-                        }
-                        onDragEnter(index);
-                    }
+
+                if (mSessionRecorder != null && mSessionRecorder.isRecording())
+                    mSessionRecorder.onLocationEvent();
+                if (mCoalesceDragLocation) {
+                    mPendingDragX = x;
+                    mPendingDragY = y;
+                    mDragLocationPending = true;
+                    mDragLocationTicker.post();
                 } else {
-                    if (mLastOverlapIndex != -1) {
-                        onDragEnter(mLastOverlapIndex);
-                    }
+                    processDragLocation(x, y);
                 }
-
-                moveDraggedView(x, y);
-
-                mLastOverlapIndex = index;
             }
             break;
 
         case DragEvent.ACTION_DRAG_EXITED:
-            Log.d(LOG_TAG," >>> ACTION_DRAG_EXITED <<< ");
+            if (DEBUG) Log.d(LOG_TAG," >>> ACTION_DRAG_EXITED <<< ");
+            flushDragLocation();
+            removeCallbacks(mDwellRunnable);
+            trace(TRACE_DRAG_EXITED, mLastOverlapIndex, mLastDragX, mLastDragY);
+            mAutoScroller.stop();
             break;
 
         case DragEvent.ACTION_DROP:
-            Log.d(LOG_TAG, " >>> ACTION_DROP <<< ");
+            if (DEBUG) Log.d(LOG_TAG, " >>> ACTION_DROP <<< ");
+            flushDragLocation();
+            trace(TRACE_DROP, mLastOverlapIndex, x, y);
+            mAutoScroller.stop();
             break;
 
         case DragEvent.ACTION_DRAG_ENDED:
-            Log.d(LOG_TAG, " >>> ACTION_DRAG_ENDED <<< ");
-            for (View cv : getChildViews()) {
-                if (cv instanceof DragAndDropElement)
-                    ((DragAndDropElement) cv).onDragEnded(mDraggingView);
-            }
+            if (DEBUG) Log.d(LOG_TAG, " >>> ACTION_DRAG_ENDED <<< ");
+            finishDrag();
+            break;
+        }
+        return true;
+    }
 
-            returnDraggingViewPosition(new AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator ani) {
-                }
+    /**
+     * ACTION_DRAG_ENDED の処理 (ドロップしたセルを並び順の位置へ戻す)
+     */
+    void finishDrag() {
+        flushDragLocation();
+        removeCallbacks(mDwellRunnable);
+        mDropTargetFilter.finish();
+        if (mGroupDrag.isDragging() && mDraggingView != null) {
+            dropDragGroup();
+        } else {
+            commitElementIndexes();
+            if (mDraggingView != null && mReorderListener != null && mDragStartIndex != mDraggingIndex)
+                mReorderListener.onReorder(mDragStartIndex, mDraggingIndex);
+        }
+        if (mSessionRecorder != null && mSessionRecorder.isRecording())
+            mSessionListener.onDragSessionEnded(mSessionRecorder.finish(mCellAnimator, mDropTargetFilter));
+        trace(TRACE_DRAG_ENDED, mLastOverlapIndex, mLastDragX, mLastDragY);
+        mAutoScroller.stop();
+        mScrollParent = null;
+        // ドラッグ中のセルが無い (削除/他のグリッドへ移した) 場合は既に終えている
+        if (mDraggingView == null)
+            return;
+        for (View cv : getChildViews()) {
+            if (cv instanceof DragAndDropElement)
+                ((DragAndDropElement) cv).onDragEnded(mDraggingView);
+        }
 
-                @Override
-                public void onAnimationRepeat(Animator ani) {
+        dropDragOverlay();
+        returnDraggingViewPosition(new CellAnimator.EndListener() {
+            @Override
+            public void onMoveEnded(View v) {
+                if (mDragSource != null) {
+                    mDragSource.onDragEnded();
                 }
-
-                @Override
-                public void onAnimationEnd(Animator ani) {
-                    if (mDragSource != null) {
-                        mDragSource.onDragEnded();
-                    }
-                    mDraggingView = null;
+                mDraggingView = null;
+                if (mCellRenderer != null) {
+                    // 描画に戻す
+                    recycleCell(mDraggingIndex);
+                    invalidate();
+                } else {
+                    rebindDroppedCell();
                 }
+                mDraggingIndex = -1;
+            }
+        });
+    }
 
-                @Override
-                public void onAnimationCancel(Animator ani) {
-                }
-            });
-            break;
+    private void processDragLocation(int x, int y) {
+        beginTraceSection("DragDropGrid#dragLocation");
+        handleDragLocation(x, y);
+        updateAutoScroll();
+        endTraceSection();
+        trace(TRACE_DRAG_LOCATION, mLastOverlapIndex, x, y);
+    }
+
+    /**
+     * 未処理のドラッグ位置があれば処理する
+     */
+    private void flushDragLocation() {
+        if (!mDragLocationPending)
+            return;
+        mDragLocationPending = false;
+        mDragLocationTicker.cancel();
+        if (mDraggingView != null)
+            processDragLocation(mPendingDragX, mPendingDragY);
+    }
+
+    private void handleDragLocation(int x, int y) {
+        mLastDragX = x;
+        mLastDragY = y;
+        
+        final DragSessionRecorder recorder =
+            mSessionRecorder != null && mSessionRecorder.isRecording() ? mSessionRecorder : null;
+        long start = recorder != null ? System.nanoTime() : 0;
+        
+        final int current = mDraggingIndex;
+        final long now = SystemClock.uptimeMillis();
+        int candidate = indexWithPoint(x, y);
+        // まとめてドラッグ中は、末尾に隠したセルの上を移動先にしない
+        if (mGroupDrag.isHidden(candidate))
+            candidate = -1;
+        int index = mDropTargetFilter.filter(candidate, current, x, y, now);
+        
+        if (recorder != null) {
+            long t = System.nanoTime();
+            recorder.onLocationHandled();
+            recorder.addHitTestTime(t - start);
+            start = t;
         }
-        return true;
+        
+        // 隙間や範囲外 (-1) では元の位置のままにする
+        if (index != -1) {
+            if (index == current) {
+                onDragOver(index);
+            } else {
+                onDragExit(current);
+                onDragEnter(index);
+            }
+            mLastOverlapIndex = index;
+        }
+
+        long delay = mDropTargetFilter.getPendingDelay(now);
+        removeCallbacks(mDwellRunnable);
+        if (delay >= 0)
+            postDelayed(mDwellRunnable, delay);
+
+        moveDraggedView(x, y);
+        
+        if (recorder != null)
+            recorder.addReorderTime(System.nanoTime() - start);
+    }
+
+    /**
+     * 自動スクロールするかどうか
+     */
+    public void setAutoScrollEnabled(boolean enabled) {
+        mAutoScrollEnabled = enabled;
+        if (!enabled)
+            mAutoScroller.stop();
+    }
+
+    /**
+     * 自動スクロールを開始する端からの距離 (px)
+     */
+    public void setAutoScrollEdgeSize(int edgeSize) {
+        mAutoScroller.setEdgeSize(edgeSize);
+    }
+
+    /**
+     * 自動スクロールの最大速度 (px/秒)
+     */
+    public void setAutoScrollMaxSpeed(float pixelsPerSecond) {
+        mAutoScroller.setMaxSpeed(pixelsPerSecond);
+    }
+
+    /**
+     * 移動先のセルに切り替えるには、セルの境界からこの距離 (px) 以上内側に入る必要がある (既定は 0)
+     */
+    public void setDropTargetHysteresis(int pixels) {
+        mDropTargetFilter.setHysteresis(pixels);
+    }
+
+    /**
+     * 移動先のセルに切り替えるまでに、そのセル上に留まる時間 (ms, 既定は 0)
+     */
+    public void setDropTargetDwellTime(long millis) {
+        mDropTargetFilter.setDwellTime(millis);
+    }
+
+    /**
+     * 直近のドラッグで、hysteresis / dwell time により見送った並び替えの数
+     */
+    public int getSuppressedReorderCount() {
+        return mDropTargetFilter.getSuppressedCount();
+    }
+
+    /**
+     * 直近のドラッグで実行した並び替えの数
+     */
+    public int getCommittedReorderCount() {
+        return mDropTargetFilter.getCommittedCount();
+    }
+
+    private void updateAutoScroll() {
+        if (!mAutoScrollEnabled)
+            return;
+        
+        if (mScrollParent == null)
+            mScrollParent = findScrollParent();
+        if (mScrollParent == null || !getLocalVisibleRect(mVisibleRect)) {
+            mAutoScroller.stop();
+            return;
+        }
+        mAutoScroller.update(mLastDragY, mVisibleRect.top, mVisibleRect.bottom);
+    }
+
+    /**
+     * 縦にスクロールできる親 View を探す (グリッド自身でスクロールする場合は自身)
+     */
+    private View findScrollParent() {
+        if (mScrollingEnabled)
+            return this;
+        ViewParent parent = getParent();
+        while (parent instanceof View) {
+            View v = (View) parent;
+            if (v.canScrollVertically(1) || v.canScrollVertically(-1))
+                return v;
+            parent = parent.getParent();
+        }
+        return null;
+    }
+
+    private class AutoScrollTarget implements EdgeAutoScroller.Target {
+
+        @Override
+        public int scrollContentBy(int dy) {
+            if (mScrollParent == null)
+                return 0;
+            int before = mScrollParent.getScrollY();
+            mScrollParent.scrollBy(0, dy);
+            return mScrollParent.getScrollY() - before;
+        }
+
+        @Override
+        public void onAutoScrolled(int dy) {
+            if (mDraggingView == null) {
+                mAutoScroller.stop();
+                return;
+            }
+            // 新しいドラッグ位置が届いていればそちらを基準にする
+            flushDragLocation();
+            // 指の位置は画面上で変わらないため、グリッド上の座標をスクロール量だけずらす
+            handleDragLocation(mLastDragX, mLastDragY + dy);
+            updateAutoScroll();
+        }
+
     }
 
     private void moveDraggedView(int x, int y) {
@@ -573,58 +2142,62 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
             t = t - mLastTouchPoint.y + height / 2;
         }
 
-        childAt.layout(l, t, l + width, t + height);
+        if (mDragOverlay.isShowing())
+            mDragOverlay.moveTo(l, t);
+        else
+            childAt.layout(l, t, l + width, t + height);
     }
 
-    private void transferAnimation(final View v, final float fromX, final float toX, final float fromY, final float toY) {
-        // 既存アニメーションをキャンセルしておく
-        animationCancel(v);
-
-        ValueAnimator valueAnimator = ValueAnimator.ofFloat(0.0f, 1.0f);
-        valueAnimator.setDuration(ANIMATION_DURATION);
-        valueAnimator.addListener(new AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator anima) {
-                // LogUtil.d(" >> onAnimationStart << "+ tabView.getIndex());
-            }
-
-            @Override
-            public void onAnimationRepeat(Animator anima) {
-            }
+    /**
+     * 画像の位置に元のセルを置いて表示し直す (以降は通常のドロップアニメーション)
+     */
+    private void dropDragOverlay() {
+        if (!mDragOverlay.isShowing())
+            return;
+        if (mDraggingView != null) {
+            int l = mDragOverlay.getLeft();
+            int t = mDragOverlay.getTop();
+            mDraggingView.layout(l, t, l + mDraggingView.getWidth(), t + mDraggingView.getHeight());
+            mDraggingView.setVisibility(View.VISIBLE);
+        }
+        mDragOverlay.hide();
+    }
 
-            @Override
-            public void onAnimationEnd(Animator anima) {
-                // LogUtil.d(" >> onAnimationEnd << "+ tabView.getIndex() +
-                // "  >> left =" + v.getLeft());
-            }
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mCellRenderer == null)
+            return;
+        
+        for (int index = mFirstBoundIndex; index <= mLastBoundIndex; index++) {
+            // View になっているセル (ドラッグ中のセル) は View 側で描画される
+            if (mLayout.cellAt(index) != null || mGroupDrag.isHidden(index))
+                continue;
+            int saveCount = canvas.save();
+            canvas.translate(mLayout.slotLeft(index), mLayout.slotTop(index));
+            mCellRenderer.drawCell(canvas, index, mLayout.positionAt(index),
+                mLayout.slotWidth(index), mLayout.slotHeight(index));
+            canvas.restoreToCount(saveCount);
+        }
+    }
 
-            @Override
-            public void onAnimationCancel(Animator anima) {
-                // LogUtil.d(" >> onAnimationCancel << "+ tabView.getIndex() +
-                // "   >> left =" + v.getLeft() );
-            }
-        });
-        valueAnimator.addUpdateListener(new AnimatorUpdateListener() {
-            // アニメーションフレーム毎に呼ばれる
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                float r = ((Float) animation.getAnimatedValue()).floatValue();
-                int l = (int) (r * toX + (1 - r) * fromX);
-                int t = (int) (r * toY + (1 - r) * fromY);
-                v.layout(l, t, l + v.getWidth(), t + v.getHeight());
-            }
-        });
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        mDragOverlay.draw(canvas);
+    }
 
-        // アニメーションの開始
-        valueAnimator.start();
-        v.setTag(valueAnimator);
+    private void transferAnimation(View v, float toX, float toY) {
+        mCellAnimator.animate(v, toX, toY, ANIMATION_DURATION, null);
     }
 
     private void animationCancel(View v) {
-        ValueAnimator a = (ValueAnimator) v.getTag();
-        if (a != null)
-            a.cancel();
-        v.setTag(null);
+        mCellAnimator.cancel(v);
+    }
+
+    private void resetTranslation(View v) {
+        v.setTranslationX(0);
+        v.setTranslationY(0);
     }
 
     private void onDragEnter(int index) {
@@ -649,85 +2222,142 @@ public class DragDropGrid extends ViewGroup implements View.OnLongClickListener,
         return mDraggingView;
     }
 
-    private void returnDraggingViewPosition(AnimatorListener animatorListener) {
+    private void returnDraggingViewPosition(CellAnimator.EndListener endListener) {
         if (mDraggingView != null) {
             final View tb = mDraggingView;
-            final int index = ((DragAndDropElement) tb).getIndex();
-
-            // from
-            final float fromX = tb.getX();
-            final float fromY = tb.getY();
+            final int index = mDraggingIndex;
 
             // to
-            final Point p = pointWithIndex(index, mDraggingView);
-            final float toX = p.x;
-            final float toY = p.y;
-
-            ValueAnimator valueAnimator = ValueAnimator.ofFloat(0.0f, 1.0f);
-            valueAnimator.setDuration((long) (ANIMATION_DURATION * 1.3));
-            valueAnimator.addListener(animatorListener);
-            valueAnimator.addUpdateListener(new AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    float r = ((Float) animation.getAnimatedValue()).floatValue();
-                    int l = (int) (r * toX + (1 - r) * fromX);
-                    int t = (int) (r * toY + (1 - r) * fromY);
-                    tb.layout(l, t, l + tb.getWidth(), t + tb.getHeight());
-                }
-            });
-            valueAnimator.start();
+            mCellAnimator.animate(tb, mLayout.slotLeft(index), mLayout.slotTop(index),
+                (long) (ANIMATION_DURATION * 1.3), endListener);
         }
     }
 
     private void transferChildView(int baseIndex) {
         final int toIndex = baseIndex;
-        final int fromIndex = ((DragAndDropElement) mDraggingView).getIndex();
-        if (toIndex > fromIndex) {
-            for (int i = fromIndex + 1; i < toIndex + 1; i++) {
+        final int fromIndex = mDraggingIndex;
+        if (mTraceListener != null && fromIndex != toIndex)
+            trace(TRACE_REORDER, toIndex, fromIndex, toIndex);
+
+        // 並び順をずらし、index が変わったセルだけをアニメーションさせる
+        int end = mLayout.move(fromIndex, toIndex);
+        shiftCells(Math.min(fromIndex, toIndex), end);
+
+        mDraggingIndex = toIndex;
+        // 画像を描いている間、隠したセルはドロップ時に画像の位置へ一度だけ置く
+        if (mDragOverlay.isShowing())
+            return;
+        final View dragTabView = mDraggingView;
+        int left = mLayout.slotLeft(toIndex);
+        int top = mLayout.slotTop(toIndex);
+        dragTabView.layout(left, top, left + dragTabView.getWidth(), top + dragTabView.getHeight());
+    }
 
-                int moveIndex = i - 1;
-                final View tb = viewWithIndex(i);
-                if (tb == null)
-                    continue;
-                
-                ((DragAndDropElement) tb).setIndex(moveIndex);
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        ss.order = mPendingOrder != null ? mPendingOrder : mLayout.copyOrder();
+        return ss;
+    }
 
-                // From
-                final float fromX = tb.getX();
-                final float fromY = tb.getY();
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        
+        // セルは作り直さず、次の layout で並び順だけを反映する
+        mPendingOrder = ss.order;
+        requestLayout();
+    }
+
+    /**
+     * 復元した並び順を、アニメーションせずにそのまま反映する
+     */
+    private void applyPendingOrder() {
+        int[] order = mPendingOrder;
+        mPendingOrder = null;
+        if (mDraggingView != null || !mLayout.setOrder(order))
+            return;
+        
+        placeCells(false);
+    }
 
-                // To
-                final Point p = pointWithIndex(moveIndex, mDraggingView);
-                final float toX = p.x;
-                final float toY = p.y;
+    /**
+     * 並び順の保存
+     * 
+     * 並び替えた数が少ない場合は、元の並びと違う index と position の組だけを書き出す
+     */
+    static class SavedState extends BaseSavedState {
 
-                transferAnimation((View) tb, fromX, toX, fromY, toY);
-            }
-        } else {
-            for (int i = fromIndex - 1; i > toIndex - 1; i--) {
-                int moveIndex = i + 1;
-                final View v = viewWithIndex(i);
-                if (v == null)
-                    continue;
-                
-                ((DragAndDropElement) v).setIndex(moveIndex);
-                // From
-                final float fromX = v.getX();
-                final float fromY = v.getY();
+        private static final int ENCODING_FULL = 0;
+        private static final int ENCODING_DELTA = 1;
+
+        int[] order;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
 
-                // To
-                final Point p = pointWithIndex(moveIndex, mDraggingView);
-                final float toX = p.x;
-                final float toY = p.y;
+        private SavedState(Parcel in) {
+            super(in);
+            int count = in.readInt();
+            int encoding = in.readInt();
+            int[] values = in.createIntArray();
+            if (encoding == ENCODING_FULL) {
+                order = values;
+            } else {
+                order = new int[count];
+                for (int index = 0; index < count; index++)
+                    order[index] = index;
+                for (int i = 0; i + 1 < values.length; i += 2)
+                    order[values[i]] = values[i + 1];
+            }
+        }
 
-                transferAnimation((View) v, fromX, toX, fromY, toY);
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            int count = order.length;
+            int changed = 0;
+            for (int index = 0; index < count; index++) {
+                if (order[index] != index)
+                    changed++;
+            }
+            
+            out.writeInt(count);
+            if (changed * 2 >= count) {
+                out.writeInt(ENCODING_FULL);
+                out.writeIntArray(order);
+                return;
+            }
+            
+            int[] delta = new int[changed * 2];
+            int i = 0;
+            for (int index = 0; index < count; index++) {
+                if (order[index] != index) {
+                    delta[i++] = index;
+                    delta[i++] = order[index];
+                }
             }
+            out.writeInt(ENCODING_DELTA);
+            out.writeIntArray(delta);
         }
 
-        final Point p = pointWithIndex(toIndex, mDraggingView);
-        final View dragTabView = mDraggingView;
-        ((DragAndDropElement) dragTabView).setIndex(toIndex);
-        dragTabView.layout(p.x, p.y, p.x + dragTabView.getWidth(), p.y + dragTabView.getHeight());
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     private class TabDragShadowBuilder extends DragShadowBuilder {
@@ -18,11 +18,11 @@ public interface DragDropGridAdapter {
     /**
      * Returns the view for the item in the page
      * 
-     * @param page index
-     * @param item index
+     * @param index item index
+     * @param convertView 再利用できる View (無い場合は null)
      * @return the view 
      */
-    public View getView(int index);
+    public View getView(int index, View convertView);
     
     /**
      * 
@@ -74,4 +74,24 @@ public interface DragDropGridAdapter {
      */
     public View getFooter();
     
+    /**
+     * 変更通知を受け取る Observer を登録する
+     */
+    public void registerObserver(Observer observer);
+    
+    /**
+     * 変更通知を受け取る Observer を解除する
+     */
+    public void unregisterObserver(Observer observer);
+    
+    /**
+     * Adapter の変更通知
+     */
+    public interface Observer {
+        void onItemRangeInserted(int positionStart, int itemCount);
+        void onItemRangeRemoved(int positionStart, int itemCount);
+        void onItemMoved(int fromPosition, int toPosition);
+        void onItemRangeChanged(int positionStart, int itemCount);
+    }
+    
 }
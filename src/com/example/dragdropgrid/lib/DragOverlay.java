@@ -0,0 +1,137 @@
+package com.example.dragdropgrid.lib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.View;
+
+/**
+ * ドラッグ中のセルを画像にして、グリッドの上に描画する
+ *
+ * ドラッグ開始時に一度だけセルを Bitmap に描画しておき、以降は位置を変えて
+ * 前回と今回の範囲だけを invalidate する。layout や子 View の並び替えは行わない。
+ * 複数のセルをまとめてドラッグする場合は、少しずつずらして重ねた画像にする。
+ */
+final class DragOverlay {
+
+    /**
+     * 重ねて描く最大の枚数
+     */
+    private static final int MAX_STACK_LAYERS = 3;
+    private static final float STACK_OFFSET_DP = 4;
+
+    private final View mHost;
+    /**
+     * セルの画像 (同じ大きさであれば使い回す)
+     */
+    private Bitmap mBitmap;
+    private final Canvas mCanvas = new Canvas();
+    /**
+     * 描画位置 (グリッド座標)
+     */
+    private final Rect mBounds = new Rect();
+    private final Rect mDirty = new Rect();
+    private boolean mShowing;
+    /**
+     * 重ねる画像のずれ (px)
+     */
+    private final int mStackOffset;
+
+    DragOverlay(View host) {
+        mHost = host;
+        mStackOffset = (int) (STACK_OFFSET_DP * host.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * セルを stackCount 枚重ねた画像にして、セルの現在位置に表示する
+     */
+    void capture(View v, int stackCount) {
+        int layers = Math.max(1, Math.min(stackCount, MAX_STACK_LAYERS));
+        int offset = (layers - 1) * mStackOffset;
+        int width = v.getWidth() + offset;
+        int height = v.getHeight() + offset;
+        if (v.getWidth() <= 0 || v.getHeight() <= 0)
+            return;
+
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            release();
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCanvas.setBitmap(mBitmap);
+        } else {
+            mBitmap.eraseColor(0);
+        }
+        // 奥の画像から描く
+        for (int layer = layers - 1; layer >= 0; layer--) {
+            int saveCount = mCanvas.save();
+            mCanvas.translate(layer * mStackOffset, layer * mStackOffset);
+            v.draw(mCanvas);
+            mCanvas.restoreToCount(saveCount);
+        }
+
+        mBounds.set(v.getLeft(), v.getTop(), v.getLeft() + width, v.getTop() + height);
+        mShowing = true;
+        mHost.invalidate(mBounds);
+    }
+
+    /**
+     * 表示位置はそのままで、セルを stackCount 枚重ねた画像に描き直す
+     */
+    void recapture(View v, int stackCount) {
+        if (!mShowing)
+            return;
+        int left = mBounds.left;
+        int top = mBounds.top;
+        mHost.invalidate(mBounds);
+        capture(v, stackCount);
+        moveTo(left, top);
+    }
+
+    boolean isShowing() {
+        return mShowing;
+    }
+
+    int getLeft() {
+        return mBounds.left;
+    }
+
+    int getTop() {
+        return mBounds.top;
+    }
+
+    /**
+     * 表示位置を変え、前回と今回の範囲だけを再描画する
+     */
+    void moveTo(int left, int top) {
+        if (!mShowing || (left == mBounds.left && top == mBounds.top))
+            return;
+        mDirty.set(mBounds);
+        mBounds.offsetTo(left, top);
+        mDirty.union(mBounds);
+        mHost.invalidate(mDirty);
+    }
+
+    void draw(Canvas canvas) {
+        if (mShowing)
+            canvas.drawBitmap(mBitmap, mBounds.left, mBounds.top, null);
+    }
+
+    /**
+     * 表示をやめる (画像は次のドラッグで使い回す)
+     */
+    void hide() {
+        if (!mShowing)
+            return;
+        mShowing = false;
+        mHost.invalidate(mBounds);
+    }
+
+    void release() {
+        hide();
+        if (mBitmap != null) {
+            mCanvas.setBitmap(null);
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+
+}
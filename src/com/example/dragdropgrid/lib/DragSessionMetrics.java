@@ -0,0 +1,181 @@
+package com.example.dragdropgrid.lib;
+
+/**
+ * 1回のドラッグ (開始から ACTION_DRAG_ENDED まで) の計測結果
+ *
+ * 時間は全てナノ秒。フレーム時間の分布は 1ms 毎のヒストグラムで持つ。
+ */
+public final class DragSessionMetrics {
+
+    /**
+     * ヒストグラムの1区間の幅 (1ms)
+     */
+    public static final long FRAME_HISTOGRAM_BUCKET_NANOS = 1000000L;
+    /**
+     * ヒストグラムの区間の数 (最後の区間にはそれ以上の長さのフレームをまとめる)
+     */
+    public static final int FRAME_HISTOGRAM_SIZE = 100;
+
+    private final long mDurationNanos;
+    private final int mFrameCount;
+    private final int mDroppedFrameCount;
+    private final long mMaxFrameNanos;
+    private final long mTotalFrameNanos;
+    private final int mLocationEventCount;
+    private final int mHandledLocationCount;
+    private final int mReorderCount;
+    private final int mSuppressedReorderCount;
+    private final int mAnimationStartedCount;
+    private final int mAnimationCancelledCount;
+    private final long mHitTestNanos;
+    private final long mReorderNanos;
+    private final int[] mFrameHistogram;
+
+    DragSessionMetrics(long durationNanos, int frameCount, int droppedFrameCount, long maxFrameNanos,
+            long totalFrameNanos, int locationEventCount, int handledLocationCount, int reorderCount,
+            int suppressedReorderCount, int animationStartedCount, int animationCancelledCount,
+            long hitTestNanos, long reorderNanos, int[] frameHistogram) {
+        mDurationNanos = durationNanos;
+        mFrameCount = frameCount;
+        mDroppedFrameCount = droppedFrameCount;
+        mMaxFrameNanos = maxFrameNanos;
+        mTotalFrameNanos = totalFrameNanos;
+        mLocationEventCount = locationEventCount;
+        mHandledLocationCount = handledLocationCount;
+        mReorderCount = reorderCount;
+        mSuppressedReorderCount = suppressedReorderCount;
+        mAnimationStartedCount = animationStartedCount;
+        mAnimationCancelledCount = animationCancelledCount;
+        mHitTestNanos = hitTestNanos;
+        mReorderNanos = reorderNanos;
+        mFrameHistogram = frameHistogram;
+    }
+
+    static int histogramBucket(long frameNanos) {
+        return (int) Math.max(0, Math.min(FRAME_HISTOGRAM_SIZE - 1, frameNanos / FRAME_HISTOGRAM_BUCKET_NANOS));
+    }
+
+    /**
+     * ドラッグ開始から終了までの時間
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * 計測したフレーム数
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * リフレッシュ間隔を超えて抜けたフレーム数
+     */
+    public int getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * 最も長かったフレームの時間
+     */
+    public long getMaxFrameNanos() {
+        return mMaxFrameNanos;
+    }
+
+    /**
+     * フレーム時間の平均 (フレームが無い場合は 0)
+     */
+    public long getAverageFrameNanos() {
+        return mFrameCount > 0 ? mTotalFrameNanos / mFrameCount : 0;
+    }
+
+    /**
+     * 受け取った ACTION_DRAG_LOCATION の数
+     */
+    public int getLocationEventCount() {
+        return mLocationEventCount;
+    }
+
+    /**
+     * 処理したドラッグ位置の数 (フレーム毎にまとめた場合は受け取った数より少なくなる)
+     */
+    public int getHandledLocationCount() {
+        return mHandledLocationCount;
+    }
+
+    /**
+     * 実行した並び替えの数
+     */
+    public int getReorderCount() {
+        return mReorderCount;
+    }
+
+    /**
+     * hysteresis / dwell time により見送った並び替えの数
+     */
+    public int getSuppressedReorderCount() {
+        return mSuppressedReorderCount;
+    }
+
+    /**
+     * 開始したセル移動アニメーションの数
+     */
+    public int getAnimationStartedCount() {
+        return mAnimationStartedCount;
+    }
+
+    /**
+     * 途中で止めたセル移動アニメーションの数
+     */
+    public int getAnimationCancelledCount() {
+        return mAnimationCancelledCount;
+    }
+
+    /**
+     * 移動先の判定にかかった時間
+     */
+    public long getHitTestNanos() {
+        return mHitTestNanos;
+    }
+
+    /**
+     * 移動先の判定の後、並び替えとドラッグ中のセル (画像) の移動にかかった時間
+     *
+     * layout パスの時間は含まない
+     */
+    public long getReorderNanos() {
+        return mReorderNanos;
+    }
+
+    /**
+     * フレーム時間のヒストグラム
+     *
+     * i 番目の要素は i ms 以上 i + 1 ms 未満のフレーム数 (最後の要素はそれ以上の全て)
+     */
+    public int[] getFrameHistogram() {
+        return mFrameHistogram.clone();
+    }
+
+    /**
+     * フレーム時間のパーセンタイル (ヒストグラムの区間の上端, フレームが無い場合は 0)
+     *
+     * @param percentile 0 - 100
+     */
+    public long getFrameNanosPercentile(int percentile) {
+        if (mFrameCount == 0)
+            return 0;
+        int p = Math.max(0, Math.min(100, percentile));
+        // 全フレームのうち p% が収まる最初の区間
+        long rank = Math.max(1, ((long) mFrameCount * p + 99) / 100);
+        int seen = 0;
+        for (int bucket = 0; bucket < mFrameHistogram.length; bucket++) {
+            seen += mFrameHistogram[bucket];
+            if (seen >= rank)
+                return bucket < mFrameHistogram.length - 1
+                    ? (bucket + 1) * FRAME_HISTOGRAM_BUCKET_NANOS : mMaxFrameNanos;
+        }
+        return mMaxFrameNanos;
+    }
+
+}
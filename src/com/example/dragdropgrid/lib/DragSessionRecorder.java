@@ -0,0 +1,121 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.Arrays;
+
+import android.view.View;
+
+/**
+ * ドラッグ中のフレーム時間とイベント数を集計する
+ *
+ * ドラッグ中はフレームコールバックを毎フレーム予約し、前回のフレームとの間隔を記録する。
+ * フレーム時間は 1ms 毎の固定のヒストグラムに数え、分布を後から求められるようにする。
+ * 集計はプリミティブ値だけで行い、結果は終了時に1つの DragSessionMetrics にまとめる。
+ */
+final class DragSessionRecorder implements FrameTicker.Callback {
+
+    private final FrameTicker mTicker;
+    private long mFrameIntervalNanos;
+    private boolean mRecording;
+
+    private long mStartTime;
+    private long mLastFrameTime;
+    private int mFrameCount;
+    private int mDroppedFrameCount;
+    private long mMaxFrameNanos;
+    private long mTotalFrameNanos;
+    private int mLocationEventCount;
+    private int mHandledLocationCount;
+    private long mHitTestNanos;
+    private long mReorderNanos;
+    /**
+     * フレーム時間のヒストグラム (ドラッグ毎に使い回す)
+     */
+    private final int[] mFrameHistogram = new int[DragSessionMetrics.FRAME_HISTOGRAM_SIZE];
+    /**
+     * 開始時の CellAnimator の累計
+     */
+    private int mStartedBase;
+    private int mCancelledBase;
+
+    DragSessionRecorder(View host) {
+        mTicker = new FrameTicker(host, this);
+    }
+
+    boolean isRecording() {
+        return mRecording;
+    }
+
+    void start(long frameIntervalNanos, CellAnimator animator) {
+        mFrameIntervalNanos = frameIntervalNanos;
+        mRecording = true;
+        mStartTime = System.nanoTime();
+        mLastFrameTime = 0;
+        mFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mMaxFrameNanos = 0;
+        mTotalFrameNanos = 0;
+        mLocationEventCount = 0;
+        mHandledLocationCount = 0;
+        mHitTestNanos = 0;
+        mReorderNanos = 0;
+        Arrays.fill(mFrameHistogram, 0);
+        mStartedBase = animator.getStartedCount();
+        mCancelledBase = animator.getCancelledCount();
+        mTicker.post();
+    }
+
+    void onLocationEvent() {
+        mLocationEventCount++;
+    }
+
+    void onLocationHandled() {
+        mHandledLocationCount++;
+    }
+
+    void addHitTestTime(long nanos) {
+        mHitTestNanos += nanos;
+    }
+
+    void addReorderTime(long nanos) {
+        mReorderNanos += nanos;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRecording)
+            return;
+
+        if (mLastFrameTime != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameTime;
+            mFrameCount++;
+            mTotalFrameNanos += frameNanos;
+            if (frameNanos > mMaxFrameNanos)
+                mMaxFrameNanos = frameNanos;
+            mFrameHistogram[DragSessionMetrics.histogramBucket(frameNanos)]++;
+            // 間隔の半分までの遅れは誤差として扱う
+            long missed = (frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+            if (missed > 0)
+                mDroppedFrameCount += missed;
+        }
+        mLastFrameTime = frameTimeNanos;
+        mTicker.post();
+    }
+
+    /**
+     * 計測を終了して結果をまとめる
+     */
+    DragSessionMetrics finish(CellAnimator animator, DropTargetFilter filter) {
+        cancel();
+        return new DragSessionMetrics(System.nanoTime() - mStartTime, mFrameCount, mDroppedFrameCount,
+            mMaxFrameNanos, mTotalFrameNanos, mLocationEventCount, mHandledLocationCount,
+            filter.getCommittedCount(), filter.getSuppressedCount(),
+            animator.getStartedCount() - mStartedBase, animator.getCancelledCount() - mCancelledBase,
+            mHitTestNanos, mReorderNanos, mFrameHistogram.clone());
+    }
+
+    void cancel() {
+        mRecording = false;
+        mTicker.cancel();
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * View#startDrag に渡す local state
+ *
+ * ドラッグ中のセルを持っているグリッドと、受け入れを断ったグリッドを覚えておく。
+ * グリッド間でセルを移した場合は持ち主を書き換え、断った記録は取り直す。
+ */
+final class DragTransfer {
+
+    private DragDropGrid mOwner;
+    /**
+     * 今の持ち主からの受け入れを断ったグリッド
+     */
+    private final List<DragDropGrid> mRefused = new ArrayList<DragDropGrid>();
+
+    DragTransfer(DragDropGrid owner) {
+        mOwner = owner;
+    }
+
+    DragDropGrid getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * target へ移すか問い合わせてよいか (持ち主自身と、断ったグリッドには問い合わせない)
+     */
+    boolean canTransferTo(DragDropGrid target) {
+        return target != mOwner && !mRefused.contains(target);
+    }
+
+    void refuse(DragDropGrid target) {
+        if (!mRefused.contains(target))
+            mRefused.add(target);
+    }
+
+    void moveTo(DragDropGrid owner) {
+        mOwner = owner;
+        mRefused.clear();
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.example.dragdropgrid.lib;
+
+/**
+ * ドラッグ中の移動先セルの切り替えを間引く
+ *
+ * セルの内側 (境界から hysteresis 分だけ狭めた範囲) に入り、さらに dwellTime の間
+ * 同じセルに留まった時だけ移動先を切り替える。境界付近で指が揺れても並び替えが
+ * 連続しないようにする。間引いた候補の数を数えておく。
+ */
+final class DropTargetFilter {
+
+    private final GridLayoutModel<?> mLayout;
+    /**
+     * セルの境界から内側へのマージン (px)
+     */
+    private int mHysteresis;
+    /**
+     * 切り替えるまでに留まる時間 (ms)
+     */
+    private long mDwellTime;
+
+    /**
+     * 待機中の候補と、留まり始めた時刻
+     */
+    private int mPendingIndex = -1;
+    private long mPendingSince;
+    /**
+     * 見送った候補 (まだ数えていないもの)
+     */
+    private int mRejectedIndex = -1;
+
+    private int mSuppressedCount;
+    private int mCommittedCount;
+
+    DropTargetFilter(GridLayoutModel<?> layout) {
+        mLayout = layout;
+    }
+
+    void setHysteresis(int hysteresis) {
+        mHysteresis = Math.max(0, hysteresis);
+    }
+
+    void setDwellTime(long dwellTime) {
+        mDwellTime = Math.max(0, dwellTime);
+    }
+
+    /**
+     * ドラッグ開始時に状態と計数をリセットする
+     */
+    void reset() {
+        mPendingIndex = -1;
+        mRejectedIndex = -1;
+        mSuppressedCount = 0;
+        mCommittedCount = 0;
+    }
+
+    /**
+     * 移動先を決める
+     *
+     * @param candidate 座標上のセルの index (無い場合は -1)
+     * @param current ドラッグ中のセルの index
+     * @param x グリッド座標 X
+     * @param y グリッド座標 Y
+     * @param now 現在時刻 (ms)
+     * @return 移動先の index, 座標上にセルが無い場合は -1
+     */
+    int filter(int candidate, int current, int x, int y, long now) {
+        if (candidate == -1 || candidate == current) {
+            mPendingIndex = -1;
+            countRejected();
+            return candidate;
+        }
+
+        if (!isInTargetZone(candidate, x, y)) {
+            mPendingIndex = -1;
+            reject(candidate);
+            return current;
+        }
+
+        if (mDwellTime > 0) {
+            if (candidate != mPendingIndex) {
+                mPendingIndex = candidate;
+                mPendingSince = now;
+            }
+            if (now - mPendingSince < mDwellTime) {
+                reject(candidate);
+                return current;
+            }
+        }
+
+        mPendingIndex = -1;
+        mRejectedIndex = -1;
+        mCommittedCount++;
+        return candidate;
+    }
+
+    /**
+     * 留まっている候補が切り替わるまでの残り時間
+     *
+     * @return 残り時間 (ms), 待機中の候補が無い場合は -1
+     */
+    long getPendingDelay(long now) {
+        if (mPendingIndex == -1)
+            return -1;
+        return Math.max(0, mDwellTime - (now - mPendingSince));
+    }
+
+    /**
+     * ドラッグ終了時に、最後に見送った候補を数える
+     */
+    void finish() {
+        mPendingIndex = -1;
+        countRejected();
+    }
+
+    int getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    int getCommittedCount() {
+        return mCommittedCount;
+    }
+
+    private boolean isInTargetZone(int index, int x, int y) {
+        if (mHysteresis == 0)
+            return true;
+        int width = mLayout.slotWidth(index);
+        int height = mLayout.slotHeight(index);
+        // セルの半分以上は狭めない
+        int insetX = Math.min(mHysteresis, (width - 1) / 2);
+        int insetY = Math.min(mHysteresis, (height - 1) / 2);
+        int left = mLayout.slotLeft(index);
+        int top = mLayout.slotTop(index);
+        return x >= left + insetX && x < left + width - insetX
+            && y >= top + insetY && y < top + height - insetY;
+    }
+
+    /**
+     * 同じ候補を何度見送っても1回と数える
+     */
+    private void reject(int index) {
+        if (mRejectedIndex == index)
+            return;
+        countRejected();
+        mRejectedIndex = index;
+    }
+
+    private void countRejected() {
+        if (mRejectedIndex != -1) {
+            mSuppressedCount++;
+            mRejectedIndex = -1;
+        }
+    }
+
+}
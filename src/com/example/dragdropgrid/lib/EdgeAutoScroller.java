@@ -0,0 +1,138 @@
+package com.example.dragdropgrid.lib;
+
+import android.view.View;
+
+/**
+ * ドラッグ位置が表示範囲の端に近づいた時に自動でスクロールさせる
+ *
+ * スクロール速度は端からの距離で決まり、ドラッグイベントの頻度ではなく
+ * フレームコールバック毎にスクロールを進める。
+ */
+final class EdgeAutoScroller implements FrameTicker.Callback {
+
+    interface Target {
+        /**
+         * コンテンツをスクロールさせる
+         *
+         * @return 実際にスクロールした量
+         */
+        int scrollContentBy(int dy);
+
+        /**
+         * スクロールした後に呼ばれる
+         */
+        void onAutoScrolled(int dy);
+    }
+
+    private final FrameTicker mTicker;
+    private final Target mTarget;
+    /**
+     * 自動スクロールを開始する端からの距離
+     */
+    private int mEdgeSize;
+    /**
+     * 最大速度 (px/秒)
+     */
+    private float mMaxSpeed;
+    /**
+     * 現在の速度 (px/秒)
+     */
+    private float mVelocity;
+    /**
+     * 前回のフレーム時刻
+     */
+    private long mLastFrameTime;
+    /**
+     * 1px 未満のスクロール量の繰り越し
+     */
+    private float mRemainder;
+
+    EdgeAutoScroller(View host, Target target) {
+        mTicker = new FrameTicker(host, this);
+        mTarget = target;
+    }
+
+    void setEdgeSize(int edgeSize) {
+        mEdgeSize = edgeSize;
+    }
+
+    void setMaxSpeed(float maxSpeed) {
+        mMaxSpeed = maxSpeed;
+    }
+
+    /**
+     * ドラッグ位置から速度を更新する
+     *
+     * @param y ドラッグ位置
+     * @param visibleTop 表示範囲の上端
+     * @param visibleBottom 表示範囲の下端
+     */
+    void update(int y, int visibleTop, int visibleBottom) {
+        float velocity = 0;
+        int edge = Math.min(mEdgeSize, (visibleBottom - visibleTop) / 2);
+        if (edge > 0) {
+            if (y < visibleTop + edge)
+                velocity = -speedForDistance(y - visibleTop, edge);
+            else if (y > visibleBottom - edge)
+                velocity = speedForDistance(visibleBottom - y, edge);
+        }
+
+        if (velocity == 0) {
+            stop();
+            return;
+        }
+        if (mVelocity == 0) {
+            mLastFrameTime = 0;
+            mRemainder = 0;
+        }
+        mVelocity = velocity;
+        mTicker.post();
+    }
+
+    void stop() {
+        mVelocity = 0;
+        mTicker.cancel();
+    }
+
+    /**
+     * 端に近いほど速くなる (2次曲線)
+     */
+    private float speedForDistance(int distance, int edge) {
+        float ratio = 1f - Math.max(0, Math.min(distance, edge)) / (float) edge;
+        return mMaxSpeed * ratio * ratio;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mVelocity == 0)
+            return;
+
+        if (mLastFrameTime == 0) {
+            // 初回は時刻の基準だけ取る
+            mLastFrameTime = frameTimeNanos;
+            mTicker.post();
+            return;
+        }
+
+        float seconds = (frameTimeNanos - mLastFrameTime) / 1000000000f;
+        mLastFrameTime = frameTimeNanos;
+
+        float distance = mVelocity * seconds + mRemainder;
+        int dy = (int) distance;
+        mRemainder = distance - dy;
+
+        if (dy != 0) {
+            int scrolled = mTarget.scrollContentBy(dy);
+            if (scrolled == 0) {
+                // 端までスクロールしたので止める
+                stop();
+                return;
+            }
+            mTarget.onAutoScrolled(scrolled);
+        }
+
+        if (mVelocity != 0)
+            mTicker.post();
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.example.dragdropgrid.lib;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * 描画フレーム毎に1回だけコールバックを呼ぶ
+ *
+ * API 16 以上は Choreographer、それ未満は View#postDelayed で代用する。
+ * post() はフレーム毎に何度呼んでも1回しか予約されない。
+ */
+final class FrameTicker {
+
+    interface Callback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static final long FALLBACK_FRAME_DELAY = 16;
+
+    private final View mHost;
+    private final Callback mCallback;
+    private final Runnable mRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch(System.nanoTime());
+        }
+    };
+    private Object mFrameCallback;
+    private boolean mScheduled;
+
+    FrameTicker(View host, Callback callback) {
+        mHost = host;
+        mCallback = callback;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            mFrameCallback = ChoreographerCompat.newFrameCallback(this);
+    }
+
+    void post() {
+        if (mScheduled)
+            return;
+        mScheduled = true;
+        if (mFrameCallback != null)
+            ChoreographerCompat.post(mFrameCallback);
+        else
+            mHost.postDelayed(mRunnable, FALLBACK_FRAME_DELAY);
+    }
+
+    void cancel() {
+        if (!mScheduled)
+            return;
+        mScheduled = false;
+        if (mFrameCallback != null)
+            ChoreographerCompat.remove(mFrameCallback);
+        else
+            mHost.removeCallbacks(mRunnable);
+    }
+
+    private void dispatch(long frameTimeNanos) {
+        mScheduled = false;
+        mCallback.doFrame(frameTimeNanos);
+    }
+
+    /**
+     * API 16 未満で Choreographer を参照しないよう分離している
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class ChoreographerCompat {
+
+        static Object newFrameCallback(final FrameTicker ticker) {
+            return new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    ticker.dispatch(frameTimeNanos);
+                }
+            };
+        }
+
+        static void post(Object callback) {
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) callback);
+        }
+
+        static void remove(Object callback) {
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) callback);
+        }
+    }
+
+}
@@ -0,0 +1,462 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.Arrays;
+
+/**
+ * グリッドの配置と並び順のモデル
+ *
+ * Android のクラスに依存せず、セル位置の計算、座標からの index 算出、
+ * 並び順 (index -> Adapter の position) とセルの対応表の入れ替えを行う。
+ * ドラッグ中のイベント毎に呼ばれてもオブジェクトの生成は行わない。
+ * 複数マスにまたがるセルがある場合の配置は {@link SpanPacker} に任せる。
+ *
+ * @param <T> index に対応付けるセル (DragDropGrid では View)
+ */
+final class GridLayoutModel<T> {
+
+    /**
+     * 行数/列数を自動で決める (DragDropGridAdapter.AUTOMATIC と同じ値)
+     *
+     * Android のクラスを参照しないよう、Adapter の定数は使わずにここで持つ
+     */
+    static final int AUTOMATIC = -1;
+
+    /**
+     * 列数
+     */
+    private int mColumnCount = 1;
+    /**
+     * 行数
+     */
+    private int mRowCount = 1;
+    /**
+     * セルの幅
+     */
+    private int mColumnWidth;
+    /**
+     * セルの高さ
+     */
+    private int mRowHeight;
+    /**
+     * セル領域の上端 (Header の高さ)
+     */
+    private int mTop;
+    /**
+     * 列の最小幅 (列数が AUTOMATIC の場合に使う, 0 の場合は列数を変えない)
+     */
+    private int mMinColumnWidth;
+
+    /**
+     * セルの数
+     */
+    private int mItemCount;
+    /**
+     * 並び順 (index -> Adapter の position)
+     */
+    private int[] mOrder = new int[0];
+    /**
+     * index に対応するセル
+     */
+    private Object[] mCells = new Object[0];
+    /**
+     * 複数マスにまたがるセルの配置 (全て1マスの場合は null)
+     */
+    private SpanPacker mPacker;
+
+    // ---------------------------------------------------------------- 配置
+
+    /**
+     * 行数、列数とセルの大きさを決める
+     *
+     * @param widthSize グリッドの幅
+     * @param heightSize セル領域の高さ
+     * @param columnCount Adapter の列数 (AUTOMATIC の場合は -1)
+     * @param rowCount Adapter の行数 (AUTOMATIC の場合は -1)
+     * @param top セル領域の上端
+     */
+    void measure(int widthSize, int heightSize, int columnCount, int rowCount, int top) {
+        computeGridMatrixSize(columnCount, rowCount);
+        computeColumnsAndRowsSizes(widthSize, heightSize);
+        mTop = top;
+        if (mPacker != null && mPacker.getColumnCount() != mColumnCount)
+            repack(0);
+    }
+
+    /**
+     * セルの大きさ (マス数) を position 毎に指定する (null の場合は全て1マス)
+     */
+    void setSpanLookup(SpanPacker.SpanLookup lookup) {
+        mPacker = lookup != null ? new SpanPacker(lookup) : null;
+        repack(0);
+    }
+
+    boolean hasSpans() {
+        return mPacker != null;
+    }
+
+    /**
+     * セルの大きさが変わった時に全て置き直す
+     */
+    void invalidateSpans() {
+        repack(0);
+    }
+
+    /**
+     * @return 位置か大きさが変わった最後の index (変わらなかった場合と、全て1マスの場合は -1)
+     */
+    private int repack(int fromIndex) {
+        if (mPacker != null)
+            return mPacker.pack(fromIndex, mOrder, mItemCount, mColumnCount);
+        return -1;
+    }
+
+    void setMinColumnWidth(int minColumnWidth) {
+        mMinColumnWidth = Math.max(0, minColumnWidth);
+    }
+
+    /**
+     * 列数を決める
+     *
+     * @param columnCount Adapter の列数 (AUTOMATIC の場合は幅と列の最小幅から求める)
+     * @param childWidth Adapter のセルの幅 (列の最小幅が無い場合に使う)
+     */
+    int resolveColumnCount(int widthSize, int columnCount, int childWidth) {
+        if (columnCount != AUTOMATIC)
+            return columnCount;
+        int minWidth = mMinColumnWidth > 0 ? mMinColumnWidth : childWidth;
+        if (minWidth > 0)
+            return Math.max(1, widthSize / minWidth);
+        return mColumnCount;
+    }
+
+    /**
+     * 行数を決める
+     *
+     * @param rowCount Adapter の行数 (AUTOMATIC の場合はセルの数と列数から求める)
+     */
+    int resolveRowCount(int rowCount, int columnCount) {
+        if (rowCount != AUTOMATIC)
+            return rowCount;
+        int columns = Math.max(1, columnCount);
+        if (mPacker != null) {
+            // 行数は置いてみないと決まらない
+            if (columns != mColumnCount) {
+                mColumnCount = columns;
+                repack(0);
+            }
+            return Math.max(1, mPacker.getRowCount());
+        }
+        return Math.max(1, (mItemCount + columns - 1) / columns);
+    }
+
+    private void computeGridMatrixSize(int columnCount, int rowCount) {
+        if (columnCount != AUTOMATIC && rowCount != AUTOMATIC) {
+            mColumnCount = columnCount;
+            mRowCount = rowCount;
+        }
+
+        if (mColumnCount <= 0) {
+            mColumnCount = 1;
+        }
+
+        if (mRowCount <= 0) {
+            mRowCount = 1;
+        }
+    }
+
+    private void computeColumnsAndRowsSizes(int widthSize, int heightSize) {
+        mColumnWidth = widthSize / mColumnCount;
+        mRowHeight = heightSize / mRowCount;
+    }
+
+    int getColumnCount() {
+        return mColumnCount;
+    }
+
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    int getColumnWidth() {
+        return mColumnWidth;
+    }
+
+    int getRowHeight() {
+        return mRowHeight;
+    }
+
+    int getTop() {
+        return mTop;
+    }
+
+    /**
+     * セルが並んでいる行数
+     */
+    int getItemRowCount() {
+        if (mPacker != null)
+            return mPacker.getRowCount();
+        return (mItemCount + mColumnCount - 1) / mColumnCount;
+    }
+
+    int slotLeft(int index) {
+        if (mPacker != null)
+            return mPacker.columnOf(index) * mColumnWidth;
+        return (index % mColumnCount) * mColumnWidth;
+    }
+
+    int slotTop(int index) {
+        if (mPacker != null)
+            return mPacker.rowOf(index) * mRowHeight + mTop;
+        return (index / mColumnCount) * mRowHeight + mTop;
+    }
+
+    int columnSpanOf(int index) {
+        return mPacker != null ? mPacker.columnSpanOf(index) : 1;
+    }
+
+    int rowSpanOf(int index) {
+        return mPacker != null ? mPacker.rowSpanOf(index) : 1;
+    }
+
+    int slotWidth(int index) {
+        return columnSpanOf(index) * mColumnWidth;
+    }
+
+    int slotHeight(int index) {
+        return rowSpanOf(index) * mRowHeight;
+    }
+
+    /**
+     * row 以降の行にかかる最初の index
+     */
+    int firstIndexFromRow(int row) {
+        if (mPacker != null)
+            return mPacker.firstIndexFromRow(row, mItemCount);
+        return Math.min(mItemCount, Math.max(0, row) * mColumnCount);
+    }
+
+    /**
+     * row までの行に置かれた最後の index
+     */
+    int lastIndexToRow(int row) {
+        if (mPacker != null)
+            return mPacker.lastIndexToRow(row, mItemCount);
+        return Math.min(mItemCount, (row + 1) * mColumnCount) - 1;
+    }
+
+    /**
+     * 座標に対応するセルの index を返す
+     *
+     * @param x グリッド座標 X
+     * @param y グリッド座標 Y
+     * @return index, Header/Footer 上や範囲外の場合は -1
+     */
+    int indexAt(int x, int y) {
+        if (mColumnWidth <= 0 || mRowHeight <= 0)
+            return -1;
+        if (x < 0 || y < mTop)
+            return -1;
+
+        int col = x / mColumnWidth;
+        if (col >= mColumnCount)
+            return -1;
+
+        int row = (y - mTop) / mRowHeight;
+        // Footer 側の大きな座標で index が桁あふれしないよう先に行で判定する
+        if (row >= getItemRowCount())
+            return -1;
+
+        if (mPacker != null)
+            return mPacker.indexAt(col, row);
+
+        int index = row * mColumnCount + col;
+        return index < mItemCount ? index : -1;
+    }
+
+    // ---------------------------------------------------------------- 並び順
+
+    /**
+     * Adapter の並び順のままにする
+     */
+    void reset(int itemCount) {
+        mItemCount = Math.max(0, itemCount);
+        mOrder = new int[mItemCount];
+        mCells = new Object[mItemCount];
+        for (int index = 0; index < mItemCount; index++)
+            mOrder[index] = index;
+        repack(0);
+    }
+
+    int getItemCount() {
+        return mItemCount;
+    }
+
+    int positionAt(int index) {
+        return mOrder[index];
+    }
+
+    int[] copyOrder() {
+        return Arrays.copyOf(mOrder, mItemCount);
+    }
+
+    /**
+     * 並び順を差し替え、セルも新しい index へ付け替える
+     *
+     * @param order index 毎の position (0 から getItemCount() - 1 の並べ替え)
+     * @return order が現在のセル数に合わない場合は false (何も変更しない)
+     */
+    boolean setOrder(int[] order) {
+        if (order == null || order.length != mItemCount)
+            return false;
+
+        Object[] cellsByPosition = new Object[mItemCount];
+        boolean[] seen = new boolean[mItemCount];
+        for (int index = 0; index < mItemCount; index++) {
+            int position = order[index];
+            if (position < 0 || position >= mItemCount || seen[position])
+                return false;
+            seen[position] = true;
+            cellsByPosition[mOrder[index]] = mCells[index];
+        }
+
+        for (int index = 0; index < mItemCount; index++) {
+            mOrder[index] = order[index];
+            mCells[index] = cellsByPosition[order[index]];
+        }
+        repack(0);
+        return true;
+    }
+
+    /**
+     * position を表示している index を返す
+     *
+     * @return index, 見つからない場合は getItemCount()
+     */
+    int indexOfPosition(int position) {
+        for (int index = 0; index < mItemCount; index++) {
+            if (mOrder[index] == position)
+                return index;
+        }
+        return mItemCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    T cellAt(int index) {
+        if (index < 0 || index >= mItemCount)
+            return null;
+        return (T) mCells[index];
+    }
+
+    void setCell(int index, T cell) {
+        if (index >= 0 && index < mItemCount)
+            mCells[index] = cell;
+    }
+
+    void clearCells() {
+        Arrays.fill(mCells, null);
+    }
+
+    /**
+     * fromIndex のセルを toIndex へ移し、間のセルを1つずつずらす
+     *
+     * 複数マスのセルがある場合は、間より後ろのセルも押し出されて位置が変わることがある
+     *
+     * @return index か位置が変わった最後の index
+     */
+    int move(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex)
+            return toIndex;
+
+        int position = mOrder[fromIndex];
+        Object cell = mCells[fromIndex];
+        if (fromIndex < toIndex) {
+            System.arraycopy(mOrder, fromIndex + 1, mOrder, fromIndex, toIndex - fromIndex);
+            System.arraycopy(mCells, fromIndex + 1, mCells, fromIndex, toIndex - fromIndex);
+        } else {
+            System.arraycopy(mOrder, toIndex, mOrder, toIndex + 1, fromIndex - toIndex);
+            System.arraycopy(mCells, toIndex, mCells, toIndex + 1, fromIndex - toIndex);
+        }
+        mOrder[toIndex] = position;
+        mCells[toIndex] = cell;
+        return Math.max(Math.max(fromIndex, toIndex), repack(Math.min(fromIndex, toIndex)));
+    }
+
+    /**
+     * Adapter 上で position が追加された
+     *
+     * @return 追加したセルの先頭 index
+     */
+    int insertPositions(int positionStart, int count) {
+        int start = indexOfPosition(positionStart);
+        ensureCapacity(mItemCount + count);
+
+        for (int index = 0; index < mItemCount; index++) {
+            if (mOrder[index] >= positionStart)
+                mOrder[index] += count;
+        }
+        System.arraycopy(mOrder, start, mOrder, start + count, mItemCount - start);
+        System.arraycopy(mCells, start, mCells, start + count, mItemCount - start);
+        for (int i = 0; i < count; i++) {
+            mOrder[start + i] = positionStart + i;
+            mCells[start + i] = null;
+        }
+        mItemCount += count;
+        repack(start);
+        return start;
+    }
+
+    /**
+     * Adapter 上で position が削除された
+     *
+     * 削除されるセルは呼び出し側で先に片付けておくこと
+     *
+     * @return 削除した最初の index, 該当が無い場合は -1
+     */
+    int removePositions(int positionStart, int count) {
+        int positionEnd = positionStart + count;
+        int firstRemoved = -1;
+        int w = 0;
+        for (int r = 0; r < mItemCount; r++) {
+            int position = mOrder[r];
+            if (position >= positionStart && position < positionEnd) {
+                if (firstRemoved == -1)
+                    firstRemoved = r;
+                continue;
+            }
+            mOrder[w] = position >= positionEnd ? position - count : position;
+            mCells[w] = mCells[r];
+            w++;
+        }
+        Arrays.fill(mCells, w, mItemCount, null);
+        mItemCount = w;
+        if (firstRemoved != -1)
+            repack(firstRemoved);
+        return firstRemoved;
+    }
+
+    /**
+     * Adapter 上で position が移動した時に、並び順の position を付け替える
+     *
+     * セルの index は変えないので、必要に応じて {@link #move(int, int)} で移すこと
+     */
+    void remapMovedPosition(int fromPosition, int toPosition) {
+        for (int index = 0; index < mItemCount; index++) {
+            int position = mOrder[index];
+            if (position == fromPosition)
+                mOrder[index] = toPosition;
+            else if (fromPosition < toPosition && position > fromPosition && position <= toPosition)
+                mOrder[index] = position - 1;
+            else if (fromPosition > toPosition && position >= toPosition && position < fromPosition)
+                mOrder[index] = position + 1;
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (mOrder.length >= count)
+            return;
+        int capacity = Math.max(count, mOrder.length * 3 / 2);
+        mOrder = Arrays.copyOf(mOrder, capacity);
+        mCells = Arrays.copyOf(mCells, capacity);
+    }
+
+}
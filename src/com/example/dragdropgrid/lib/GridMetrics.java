@@ -0,0 +1,107 @@
+package com.example.dragdropgrid.lib;
+
+import android.content.Context;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+ * measure/layout で使う寸法のキャッシュ
+ *
+ * 画面幅は設定変更やサイズ変更で invalidate されるまで保持する。
+ * Adapter の寸法は measure 毎に1回だけ読み込み、子 View 毎には問い合わせない。
+ */
+final class GridMetrics {
+
+    private final Context mContext;
+    /**
+     * 画面幅 (未取得の場合は -1)
+     */
+    private int mDisplayWidth = -1;
+    /**
+     * 1フレームの時間 (未取得の場合は 0)
+     */
+    private long mFrameIntervalNanos;
+
+    private int mChildViewWidth;
+    private int mChildViewHeight;
+    private int mRowCount;
+    private int mColumnCount;
+    private int mViewHeight;
+    private int mHeaderViewHeight;
+    private int mFooterViewHeight;
+
+    GridMetrics(Context context) {
+        mContext = context;
+    }
+
+    @SuppressWarnings("deprecation")
+    int getDisplayWidth() {
+        if (mDisplayWidth < 0) {
+            WindowManager wm = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+            Display display = wm.getDefaultDisplay();
+            mDisplayWidth = display.getWidth();
+        }
+        return mDisplayWidth;
+    }
+
+    /**
+     * 画面のリフレッシュレートから求めた1フレームの時間
+     */
+    long getFrameIntervalNanos() {
+        if (mFrameIntervalNanos == 0) {
+            WindowManager wm = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+            float refreshRate = wm.getDefaultDisplay().getRefreshRate();
+            if (refreshRate < 1f)
+                refreshRate = 60f;
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
+        return mFrameIntervalNanos;
+    }
+
+    void invalidateDisplay() {
+        mDisplayWidth = -1;
+        mFrameIntervalNanos = 0;
+    }
+
+    /**
+     * Adapter の寸法を読み込む
+     */
+    void readAdapter(DragDropGridAdapter adapter) {
+        mChildViewWidth = adapter.getChildViewWidth();
+        mChildViewHeight = adapter.getChildViewHeight();
+        mRowCount = adapter.rowCount();
+        mColumnCount = adapter.columnCount();
+        mViewHeight = adapter.getViewHeight();
+        mHeaderViewHeight = adapter.getHeaderViewHeight();
+        mFooterViewHeight = adapter.getFooterViewHeight();
+    }
+
+    int getChildViewWidth() {
+        return mChildViewWidth;
+    }
+
+    int getChildViewHeight() {
+        return mChildViewHeight;
+    }
+
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    int getColumnCount() {
+        return mColumnCount;
+    }
+
+    int getViewHeight() {
+        return mViewHeight;
+    }
+
+    int getHeaderViewHeight() {
+        return mHeaderViewHeight;
+    }
+
+    int getFooterViewHeight() {
+        return mFooterViewHeight;
+    }
+
+}
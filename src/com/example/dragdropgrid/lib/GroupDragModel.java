@@ -0,0 +1,165 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.Arrays;
+
+/**
+ * 複数選択の状態と、選択したセルをまとめてドラッグする時の並び順
+ *
+ * 選択状態は Adapter の position 毎に持つ。まとめてドラッグする間は、ドラッグするセル以外を
+ * 並び順の末尾へ移して隠しておき、ドロップ時にドラッグしたセルの前後へまとめて戻す。
+ * View は扱わない (セルの表示/非表示は DragDropGrid 側で行う)。
+ */
+final class GroupDragModel {
+
+    /**
+     * position 毎の選択状態
+     */
+    private boolean[] mSelected = new boolean[0];
+    private int mSelectedCount;
+    /**
+     * まとめてドラッグ中のセルの position (ドラッグ開始時の index 順, ドラッグ中のセルを含む)
+     */
+    private int[] mPositions;
+    private int[] mStartIndexes;
+    /**
+     * まとめてドラッグ中は、ドラッグ中のセル以外をこの index から後ろに隠しておく
+     */
+    private int mHiddenFrom = -1;
+
+    /**
+     * @param itemCount セルの数 (選択状態の配列をこの大きさまで広げる)
+     * @return position が範囲外の場合は false
+     */
+    boolean setSelected(int position, boolean selected, int itemCount) {
+        if (position < 0 || position >= itemCount)
+            return false;
+        if (mSelected.length < itemCount)
+            mSelected = Arrays.copyOf(mSelected, itemCount);
+        if (mSelected[position] != selected) {
+            mSelected[position] = selected;
+            mSelectedCount += selected ? 1 : -1;
+        }
+        return true;
+    }
+
+    boolean isSelected(int position) {
+        return position >= 0 && position < mSelected.length && mSelected[position];
+    }
+
+    int getSelectedCount() {
+        return mSelectedCount;
+    }
+
+    /**
+     * @return 選択していたセルがあった場合は true
+     */
+    boolean clearSelection() {
+        if (mSelectedCount == 0)
+            return false;
+        Arrays.fill(mSelected, false);
+        mSelectedCount = 0;
+        return true;
+    }
+
+    boolean isDragging() {
+        return mPositions != null;
+    }
+
+    /**
+     * まとめてドラッグ中のセルの数 (ドラッグ中でない場合は 0)
+     */
+    int getGroupSize() {
+        return mPositions != null ? mPositions.length : 0;
+    }
+
+    /**
+     * 隠しているセルの先頭の index (ドラッグ中でない場合は -1)
+     */
+    int getHiddenFrom() {
+        return mHiddenFrom;
+    }
+
+    boolean isHidden(int index) {
+        return mHiddenFrom != -1 && index >= mHiddenFrom;
+    }
+
+    /**
+     * ドラッグ開始時の各セルの index (昇順)
+     */
+    int[] getStartIndexes() {
+        return mStartIndexes;
+    }
+
+    /**
+     * 選択中のセルをまとめてドラッグし始める
+     *
+     * @param order 現在の並び順
+     * @param index ドラッグするセルの index
+     * @return ドラッグするセル以外を末尾へ移した並び順
+     */
+    int[] start(int[] order, int index) {
+        int count = order.length;
+        int primary = order[index];
+        int groupCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (isSelected(order[i]))
+                groupCount++;
+        }
+
+        mPositions = new int[groupCount];
+        mStartIndexes = new int[groupCount];
+        mHiddenFrom = count - (groupCount - 1);
+        int[] newOrder = new int[count];
+        int w = 0;
+        int hidden = mHiddenFrom;
+        int g = 0;
+        for (int i = 0; i < count; i++) {
+            int position = order[i];
+            if (isSelected(position)) {
+                mPositions[g] = position;
+                mStartIndexes[g++] = i;
+                if (position != primary) {
+                    newOrder[hidden++] = position;
+                    continue;
+                }
+            }
+            newOrder[w++] = position;
+        }
+        return newOrder;
+    }
+
+    /**
+     * 隠していたセルをドラッグ中のセルの前後へ戻して、まとめてドラッグを終える
+     *
+     * まとまりは dropIndex から始まる
+     *
+     * @param order 現在の並び順 (ドロップ後の並び順に書き換える)
+     * @param dropIndex ドラッグ中のセルの index
+     * @return ドラッグ中のセルのドロップ後の index
+     */
+    int drop(int[] order, int dropIndex) {
+        int[] current = order.clone();
+        int primary = current[dropIndex];
+        int primaryIndex = dropIndex;
+        int w = dropIndex;
+        for (int position : mPositions) {
+            if (position == primary)
+                primaryIndex = w;
+            order[w++] = position;
+        }
+        for (int i = dropIndex + 1; i < mHiddenFrom; i++)
+            order[w++] = current[i];
+        cancel();
+        return primaryIndex;
+    }
+
+    /**
+     * まとめてドラッグするのをやめる (隠していたセルは末尾に置いたまま)
+     */
+    void cancel() {
+        mPositions = null;
+        mStartIndexes = null;
+        mHiddenFrom = -1;
+    }
+
+}
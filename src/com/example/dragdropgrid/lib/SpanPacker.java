@@ -0,0 +1,237 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.Arrays;
+
+/**
+ * 複数の行/列にまたがるセルの配置
+ *
+ * index 順に、前のセルの位置より後ろで入る最初の場所へ置いていく。
+ * 各セルの配置後のカーソルを覚えておき、並び替え等では変更のあった index から後ろだけを
+ * 置き直す。どのマスにどの index が入っているかを表に持ち、座標からの判定は定数時間で行う。
+ */
+final class SpanPacker {
+
+    /**
+     * position 毎の大きさ (マス数)
+     */
+    interface SpanLookup {
+        int getColumnSpan(int position);
+        int getRowSpan(int position);
+    }
+
+    private final SpanLookup mLookup;
+    private int mColumnCount = 1;
+
+    /**
+     * index 毎の配置 (左上のマス) と大きさ
+     */
+    private int[] mColumns = new int[0];
+    private int[] mRows = new int[0];
+    private int[] mColumnSpans = new int[0];
+    private int[] mRowSpans = new int[0];
+    /**
+     * index を置いた後のカーソル (行 * 列数 + 列)
+     */
+    private int[] mCursorAfter = new int[0];
+    /**
+     * index までのセルで使っている行数
+     */
+    private int[] mRowsAfter = new int[0];
+
+    /**
+     * マス (行 * 列数 + 列) 毎の index + 1 (空きは 0)
+     */
+    private int[] mOccupancy = new int[0];
+    private int mRowCount;
+    /**
+     * 最も高いセルの行数
+     */
+    private int mMaxRowSpan = 1;
+    /**
+     * 前回置いたセルの数
+     */
+    private int mPackedCount;
+
+    SpanPacker(SpanLookup lookup) {
+        mLookup = lookup;
+    }
+
+    /**
+     * fromIndex から後ろを置き直す
+     *
+     * fromIndex より前のセルは、並び順も大きさも変わっていないこと
+     *
+     * @return 置き直して位置か大きさが変わった最後の index (変わらなかった場合は -1)
+     */
+    int pack(int fromIndex, int[] order, int itemCount, int columnCount) {
+        // 前回より後ろのセルと、列数が変わった場合は全て変わったものとする
+        int comparableCount = mPackedCount;
+        if (columnCount != mColumnCount) {
+            mColumnCount = columnCount;
+            fromIndex = 0;
+            comparableCount = 0;
+        }
+        ensureCapacity(itemCount);
+        fromIndex = Math.max(0, Math.min(fromIndex, itemCount));
+        int lastChanged = -1;
+
+        int cursor = 0;
+        int rowCount = 0;
+        if (fromIndex == 0) {
+            Arrays.fill(mOccupancy, 0);
+            mMaxRowSpan = 1;
+        } else {
+            cursor = mCursorAfter[fromIndex - 1];
+            rowCount = mRowsAfter[fromIndex - 1];
+            // 置き直すセルはカーソルより後ろのマスにしか無い
+            for (int cell = cursor; cell < mOccupancy.length; cell++) {
+                if (mOccupancy[cell] > fromIndex)
+                    mOccupancy[cell] = 0;
+            }
+        }
+
+        for (int index = fromIndex; index < itemCount; index++) {
+            int position = order[index];
+            int columnSpan = Math.max(1, Math.min(mColumnCount, mLookup.getColumnSpan(position)));
+            int rowSpan = Math.max(1, mLookup.getRowSpan(position));
+
+            int cell = findFreeCell(cursor, columnSpan, rowSpan);
+            int row = cell / mColumnCount;
+            int column = cell % mColumnCount;
+            for (int r = 0; r < rowSpan; r++) {
+                int base = (row + r) * mColumnCount + column;
+                for (int c = 0; c < columnSpan; c++)
+                    mOccupancy[base + c] = index + 1;
+            }
+
+            if (index >= comparableCount || mColumns[index] != column || mRows[index] != row
+                    || mColumnSpans[index] != columnSpan || mRowSpans[index] != rowSpan)
+                lastChanged = index;
+            mColumns[index] = column;
+            mRows[index] = row;
+            mColumnSpans[index] = columnSpan;
+            mRowSpans[index] = rowSpan;
+            cursor = cell + columnSpan;
+            rowCount = Math.max(rowCount, row + rowSpan);
+            mCursorAfter[index] = cursor;
+            mRowsAfter[index] = rowCount;
+            mMaxRowSpan = Math.max(mMaxRowSpan, rowSpan);
+        }
+        mRowCount = rowCount;
+        mPackedCount = itemCount;
+        return lastChanged;
+    }
+
+    private int findFreeCell(int cursor, int columnSpan, int rowSpan) {
+        for (int cell = cursor; ; cell++) {
+            int column = cell % mColumnCount;
+            if (column + columnSpan > mColumnCount) {
+                // この行には入らないので次の行の先頭へ
+                cell += mColumnCount - column - 1;
+                continue;
+            }
+            int row = cell / mColumnCount;
+            ensureRows(row + rowSpan);
+            if (isFree(row, column, columnSpan, rowSpan))
+                return cell;
+        }
+    }
+
+    private boolean isFree(int row, int column, int columnSpan, int rowSpan) {
+        for (int r = 0; r < rowSpan; r++) {
+            int base = (row + r) * mColumnCount + column;
+            for (int c = 0; c < columnSpan; c++) {
+                if (mOccupancy[base + c] != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    int getColumnCount() {
+        return mColumnCount;
+    }
+
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    int columnOf(int index) {
+        return mColumns[index];
+    }
+
+    int rowOf(int index) {
+        return mRows[index];
+    }
+
+    int columnSpanOf(int index) {
+        return mColumnSpans[index];
+    }
+
+    int rowSpanOf(int index) {
+        return mRowSpans[index];
+    }
+
+    /**
+     * マスに置かれているセルの index
+     *
+     * @return index, 空きや範囲外の場合は -1
+     */
+    int indexAt(int column, int row) {
+        if (column < 0 || column >= mColumnCount || row < 0 || row >= mRowCount)
+            return -1;
+        return mOccupancy[row * mColumnCount + column] - 1;
+    }
+
+    /**
+     * row 以降の行にかかる最初の index
+     *
+     * 左上のマスの行は index 順に増えていくため二分探索で求める
+     */
+    int firstIndexFromRow(int row, int itemCount) {
+        return lowerBound(row - mMaxRowSpan + 1, itemCount);
+    }
+
+    /**
+     * row までの行に置かれた最後の index
+     */
+    int lastIndexToRow(int row, int itemCount) {
+        return lowerBound(row + 1, itemCount) - 1;
+    }
+
+    /**
+     * 左上のマスの行が row 以上になる最初の index
+     */
+    private int lowerBound(int row, int itemCount) {
+        int low = 0;
+        int high = itemCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mRows[mid] < row)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mColumns.length >= count)
+            return;
+        int capacity = Math.max(count, mColumns.length * 3 / 2);
+        mColumns = Arrays.copyOf(mColumns, capacity);
+        mRows = Arrays.copyOf(mRows, capacity);
+        mColumnSpans = Arrays.copyOf(mColumnSpans, capacity);
+        mRowSpans = Arrays.copyOf(mRowSpans, capacity);
+        mCursorAfter = Arrays.copyOf(mCursorAfter, capacity);
+        mRowsAfter = Arrays.copyOf(mRowsAfter, capacity);
+    }
+
+    private void ensureRows(int rows) {
+        int cells = rows * mColumnCount;
+        if (mOccupancy.length >= cells)
+            return;
+        mOccupancy = Arrays.copyOf(mOccupancy, Math.max(cells, mOccupancy.length * 2));
+    }
+
+}
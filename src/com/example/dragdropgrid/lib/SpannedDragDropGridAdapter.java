@@ -0,0 +1,26 @@
+package com.example.dragdropgrid.lib;
+
+/**
+ * 複数の行/列にまたがるセルを持つ Adapter
+ *
+ * セルは index 順に、前のセルより後ろで入る最初の場所へ詰めて置かれる。
+ * セルの View は LayoutParams に関わらず、置かれたマスの大きさ (幅 * 列数, 高さ * 行数) で
+ * measure される。大きさを変えた場合は notifyItemRangeChanged で通知すること。
+ */
+public interface SpannedDragDropGridAdapter extends DragDropGridAdapter {
+
+    /**
+     * セルの幅 (列数, 1 以上で列数を超える場合は列数に切り詰める)
+     *
+     * @param position item position
+     */
+    public int getColumnSpan(int position);
+
+    /**
+     * セルの高さ (行数, 1 以上)
+     *
+     * @param position item position
+     */
+    public int getRowSpan(int position);
+
+}
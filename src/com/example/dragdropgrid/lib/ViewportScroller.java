@@ -0,0 +1,163 @@
+package com.example.dragdropgrid.lib;
+
+import android.os.Build;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.widget.OverScroller;
+
+/**
+ * View 自身のコンテンツを縦にスクロールさせる (指で動かす / fling)
+ *
+ * スクロール位置の範囲は View の scrollTo 側で制限する。タッチ開始時には
+ * View の通常のクリック/ロングクリック処理を妨げず、touch slop を超えて指が動いた時に
+ * 初めてスクロールを開始してロングクリックを取り消す。
+ */
+final class ViewportScroller {
+
+    interface Host {
+        /**
+         * スクロールできる最大量
+         */
+        int getMaxScrollY();
+    }
+
+    private final View mView;
+    private final Host mHost;
+    private final OverScroller mScroller;
+    private final int mTouchSlop;
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+    private VelocityTracker mVelocityTracker;
+
+    private boolean mDragging;
+    private float mLastY;
+
+    ViewportScroller(View view, Host host) {
+        mView = view;
+        mHost = host;
+        mScroller = new OverScroller(view.getContext());
+        ViewConfiguration configuration = ViewConfiguration.get(view.getContext());
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+    }
+
+    /**
+     * タッチイベントを処理する
+     *
+     * onInterceptTouchEvent と onTouchEvent の両方から呼ぶ
+     *
+     * @return スクロール中でイベントを消費する場合は true
+     */
+    boolean onTouchEvent(MotionEvent event) {
+        if (mVelocityTracker == null)
+            mVelocityTracker = VelocityTracker.obtain();
+
+        switch (event.getActionMasked()) {
+        case MotionEvent.ACTION_DOWN:
+            mVelocityTracker.clear();
+            mVelocityTracker.addMovement(event);
+            mLastY = event.getY();
+            // fling 中に触れた場合はそのまま止めてスクロールを続ける
+            mDragging = !mScroller.isFinished();
+            mScroller.abortAnimation();
+            if (mDragging)
+                startDragging();
+            break;
+
+        case MotionEvent.ACTION_MOVE: {
+            mVelocityTracker.addMovement(event);
+            float y = event.getY();
+            float dy = mLastY - y;
+            if (!mDragging) {
+                if (Math.abs(dy) <= mTouchSlop)
+                    break;
+                startDragging();
+                dy = dy > 0 ? dy - mTouchSlop : dy + mTouchSlop;
+            }
+            int scroll = (int) dy;
+            // 1px 未満の移動は次回に繰り越す
+            mLastY = y + (dy - scroll);
+            if (scroll != 0)
+                mView.scrollBy(0, scroll);
+            break;
+        }
+
+        case MotionEvent.ACTION_UP:
+            if (mDragging) {
+                mVelocityTracker.addMovement(event);
+                mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                int velocity = (int) mVelocityTracker.getYVelocity();
+                if (Math.abs(velocity) > mMinFlingVelocity)
+                    fling(-velocity);
+                mDragging = false;
+                return true;
+            }
+            break;
+
+        case MotionEvent.ACTION_CANCEL:
+            if (mDragging) {
+                mDragging = false;
+                return true;
+            }
+            break;
+        }
+        return mDragging;
+    }
+
+    /**
+     * スクロール位置を進める (View#computeScroll から呼ぶ)
+     */
+    void computeScroll() {
+        if (!mScroller.computeScrollOffset())
+            return;
+        mView.scrollTo(mView.getScrollX(), mScroller.getCurrY());
+        if (!mScroller.isFinished())
+            postInvalidate();
+    }
+
+    void fling(int velocityY) {
+        int maxY = mHost.getMaxScrollY();
+        if (maxY <= 0)
+            return;
+        mScroller.fling(mView.getScrollX(), mView.getScrollY(), 0, velocityY, 0, 0, 0, maxY);
+        postInvalidate();
+    }
+
+    /**
+     * fling を止める
+     */
+    void abort() {
+        mScroller.abortAnimation();
+        mDragging = false;
+    }
+
+    void release() {
+        abort();
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    private void startDragging() {
+        mDragging = true;
+        // 親の ScrollView などに奪われないようにする
+        ViewParent parent = mView.getParent();
+        if (parent != null)
+            parent.requestDisallowInterceptTouchEvent(true);
+        mView.cancelLongPress();
+        mView.setPressed(false);
+    }
+
+    private void postInvalidate() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            mView.postInvalidateOnAnimation();
+        else
+            mView.invalidate();
+    }
+
+}
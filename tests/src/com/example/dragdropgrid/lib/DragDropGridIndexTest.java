@@ -0,0 +1,49 @@
+package com.example.dragdropgrid.lib;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+/**
+ * ドラッグ中は DragAndDropElement#setIndex をドロップまで遅らせる
+ */
+public class DragDropGridIndexTest extends AndroidTestCase {
+
+    private static final int ITEM_COUNT = 8;
+
+    private DragDropGrid mGrid;
+    private TestGridAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new TestGridAdapter(getContext(), ITEM_COUNT);
+        mGrid = new DragDropGrid(getContext());
+        mGrid.setAdapter(mAdapter);
+        int width = TestGridAdapter.CELL_SIZE * TestGridAdapter.COLUMN_COUNT;
+        mGrid.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(width * 2, MeasureSpec.EXACTLY));
+        mGrid.layout(0, 0, mGrid.getMeasuredWidth(), mGrid.getMeasuredHeight());
+    }
+
+    public void testItemChangedDuringDragDoesNotSetIndex() {
+        mGrid.beginDrag(cellWithIndex(0));
+        TestCell changed = cellWithIndex(3);
+        int before = changed.setIndexCount;
+
+        mAdapter.notifyItemChanged(3);
+
+        assertEquals(before, changed.setIndexCount);
+        assertSame(changed, cellWithIndex(3));
+    }
+
+    private TestCell cellWithIndex(int index) {
+        for (int i = 0; i < mGrid.getChildCount(); i++) {
+            View child = mGrid.getChildAt(i);
+            if (child instanceof TestCell && ((TestCell) child).getIndex() == index)
+                return (TestCell) child;
+        }
+        return null;
+    }
+
+}
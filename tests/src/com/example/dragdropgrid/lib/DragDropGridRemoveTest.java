@@ -0,0 +1,103 @@
+package com.example.dragdropgrid.lib;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import com.example.dragdropgrid.lib.DragDropGrid.DragAndDropElement;
+import com.example.dragdropgrid.lib.DragDropGrid.DragSource;
+
+/**
+ * ドラッグ中のセルが Adapter から削除された場合
+ */
+public class DragDropGridRemoveTest extends AndroidTestCase {
+
+    private static final int ITEM_COUNT = 8;
+
+    private DragDropGrid mGrid;
+    private TestGridAdapter mAdapter;
+    private int mDragEndedCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new TestGridAdapter(getContext(), ITEM_COUNT);
+        mGrid = new DragDropGrid(getContext());
+        mGrid.setDragSource(new DragSource() {
+            @Override
+            public void onDragStartPreced() {
+            }
+
+            @Override
+            public void onDragEnded() {
+                mDragEndedCount++;
+            }
+
+            @Override
+            public void onClickDragAndDropElement(DragAndDropElement v) {
+            }
+        });
+        mGrid.setAdapter(mAdapter);
+        int width = TestGridAdapter.CELL_SIZE * TestGridAdapter.COLUMN_COUNT;
+        mGrid.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(width * 2, MeasureSpec.EXACTLY));
+        mGrid.layout(0, 0, mGrid.getMeasuredWidth(), mGrid.getMeasuredHeight());
+    }
+
+    public void testRemovingDraggedItemEndsDrag() {
+        TestCell dragged = cellWithIndex(2);
+        mGrid.beginDrag(dragged);
+
+        mAdapter.remove(2);
+
+        assertNull(mGrid.getDraggingView());
+        assertEquals(1, mDragEndedCount);
+        for (int i = 0; i < mGrid.getChildCount(); i++) {
+            View child = mGrid.getChildAt(i);
+            if (!(child instanceof TestCell))
+                continue;
+            TestCell cell = (TestCell) child;
+            assertEquals(1, cell.dragEndedCount);
+            assertSame(dragged, cell.lastDragEnded);
+        }
+    }
+
+    public void testDragEndedAfterRemovalDoesNotNotifyAgain() {
+        mGrid.beginDrag(cellWithIndex(2));
+        mAdapter.remove(2);
+
+        mGrid.finishDrag();
+
+        assertEquals(1, mDragEndedCount);
+        for (int index = 0; index < ITEM_COUNT - 1; index++) {
+            TestCell cell = cellWithIndex(index);
+            assertNotNull(cell);
+            assertEquals(1, cell.dragEndedCount);
+            assertEquals(index < 2 ? index : index + 1, cell.getItem());
+        }
+    }
+
+    public void testNextDragAfterRemovalEndsNormally() {
+        mGrid.beginDrag(cellWithIndex(2));
+        mAdapter.remove(2);
+        mGrid.finishDrag();
+
+        TestCell next = cellWithIndex(0);
+        mGrid.beginDrag(next);
+        assertSame(next, mGrid.getDraggingView());
+        mGrid.finishDrag();
+        // DragSource#onDragEnded はドロップのアニメーション後なのでセルへの通知だけを見る
+        assertEquals(2, next.dragEndedCount);
+        assertSame(next, next.lastDragEnded);
+    }
+
+    private TestCell cellWithIndex(int index) {
+        for (int i = 0; i < mGrid.getChildCount(); i++) {
+            View child = mGrid.getChildAt(i);
+            if (child instanceof TestCell && ((TestCell) child).getIndex() == index)
+                return (TestCell) child;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.example.dragdropgrid.lib;
+
+import android.content.Context;
+import android.view.View;
+
+import com.example.dragdropgrid.lib.DragDropGrid.DragAndDropElement;
+
+/**
+ * テスト用のセル (受け取った通知を記録する)
+ */
+class TestCell extends View implements DragAndDropElement {
+
+    private int mItem;
+    private int mIndex = -1;
+    int setIndexCount;
+    int dragEndedCount;
+    View lastDragEnded;
+
+    TestCell(Context context) {
+        super(context);
+    }
+
+    void setItem(int item) {
+        mItem = item;
+    }
+
+    int getItem() {
+        return mItem;
+    }
+
+    @Override
+    public void onDragStartPreceding(View v) {
+    }
+
+    @Override
+    public void onDragEnded(View v) {
+        dragEndedCount++;
+        lastDragEnded = v;
+    }
+
+    @Override
+    public int getIndex() {
+        return mIndex;
+    }
+
+    @Override
+    public void setIndex(int index) {
+        setIndexCount++;
+        mIndex = index;
+    }
+
+}
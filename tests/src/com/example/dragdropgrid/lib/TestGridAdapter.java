@@ -0,0 +1,88 @@
+package com.example.dragdropgrid.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.view.View;
+
+/**
+ * テスト用の Adapter (position 毎の値を持ち、TestCell を返す)
+ */
+class TestGridAdapter extends BaseDragDropGridAdapter {
+
+    static final int COLUMN_COUNT = 4;
+    static final int CELL_SIZE = 100;
+
+    private final Context mContext;
+    private final List<Integer> mItems = new ArrayList<Integer>();
+
+    TestGridAdapter(Context context, int itemCount) {
+        mContext = context;
+        for (int i = 0; i < itemCount; i++)
+            mItems.add(i);
+    }
+
+    void remove(int position) {
+        mItems.remove(position);
+        notifyItemRemoved(position);
+    }
+
+    @Override
+    public int itemCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public View getView(int index, View convertView) {
+        TestCell cell = convertView instanceof TestCell ? (TestCell) convertView : new TestCell(mContext);
+        cell.setItem(mItems.get(index));
+        return cell;
+    }
+
+    @Override
+    public int rowCount() {
+        return AUTOMATIC;
+    }
+
+    @Override
+    public int columnCount() {
+        return COLUMN_COUNT;
+    }
+
+    @Override
+    public int getChildViewWidth() {
+        return CELL_SIZE;
+    }
+
+    @Override
+    public int getChildViewHeight() {
+        return CELL_SIZE;
+    }
+
+    @Override
+    public int getViewHeight() {
+        return 0;
+    }
+
+    @Override
+    public int getHeaderViewHeight() {
+        return 0;
+    }
+
+    @Override
+    public int getFooterViewHeight() {
+        return 0;
+    }
+
+    @Override
+    public View getHeader() {
+        return null;
+    }
+
+    @Override
+    public View getFooter() {
+        return null;
+    }
+
+}